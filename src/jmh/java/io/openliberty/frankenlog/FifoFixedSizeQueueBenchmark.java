@@ -0,0 +1,51 @@
+package io.openliberty.frankenlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the latest items, as the context before a match is kept, and going through them, as they are printed.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FifoFixedSizeQueueBenchmark.ITEMS)
+public class FifoFixedSizeQueueBenchmark {
+    static final int ITEMS = 4096;
+
+    @Param({"10", "1000", "100000"})
+    int capacity;
+
+    private final Integer[] items = new Integer[ITEMS];
+    private FifoFixedSizeQueue<Integer> queue;
+
+    @Setup
+    public void fill() {
+        for (int i = 0; i < ITEMS; i++) items[i] = i;
+        queue = new FifoFixedSizeQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) queue.push(items[i % ITEMS]);
+    }
+
+    @Benchmark
+    public void push(Blackhole blackhole) {
+        for (Integer item : items) blackhole.consume(queue.push(item));
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (int i = 0; i < ITEMS; i++) blackhole.consume(queue.get(i % capacity));
+    }
+}
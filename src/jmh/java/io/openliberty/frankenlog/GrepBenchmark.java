@@ -0,0 +1,77 @@
+package io.openliberty.frankenlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+import test.model.SyntheticLog;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The grep command from end to end, as stanzas searched a second, printing to nowhere.
+ * The patterns match a message id, the warnings and errors, and everything.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(GrepBenchmark.STANZAS)
+public class GrepBenchmark {
+    static final int STANZAS = 200_000;
+
+    @Param({"CWWKF0011I", "E |W ", "x*"})
+    String pattern;
+    @Param({"-A0", "-B5"})
+    String context;
+    @Param({"ANSI", "PLAIN"})
+    String mode;
+    @Param({"false", "true"})
+    boolean mapped;
+
+    private GrepCommand grep;
+
+    /** Throws the output away, as quickly as it can */
+    private static final class NowhereChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Setup
+    public void parseCommand() {
+        String log = new SyntheticLog(1, SyntheticLog.Format.DMY).writeTempFile(STANZAS).toString();
+        LogFile.useMappedReader = mapped;
+        CommandLine.ParseResult parsed = new CommandLine(new Lol()).parseArgs("grep", context, pattern, log);
+        grep = parsed.subcommand().commandSpec().commandLine().getCommand();
+        grep.parseArguments();
+    }
+
+    @Benchmark
+    public void grep() {
+        try (OutputSink out = new OutputSink(new NowhereChannel(), OutputSink.Mode.valueOf(mode))) {
+            grep.execute(out);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.openliberty.frankenlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import test.model.SyntheticLog;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many stanzas a second a log is split into, through a character stream or through mapped bytes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LogReaderBenchmark.STANZAS)
+public class LogReaderBenchmark {
+    static final int STANZAS = 100_000;
+
+    @Param({"DMY", "MDY", "YMD", "ISO"})
+    SyntheticLog.Format format;
+    @Param({"false", "true"})
+    boolean mapped;
+
+    private LogFile logFile;
+
+    @Setup
+    public void createLog() {
+        // name the format, since a year, month and day can all be read as a day, month and year
+        logFile = new LogFile(new SyntheticLog(1, format).writeTempFile(STANZAS).toString(), LogFile.TimestampFormat.valueOf(format.name()));
+        LogFile.useMappedReader = mapped;
+    }
+
+    @Benchmark
+    public void next(Blackhole blackhole) {
+        try (LogReader reader = logFile.openReader()) {
+            for (Stanza stanza = reader.next(); stanza != null; stanza = reader.next()) blackhole.consume(stanza);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.openliberty.frankenlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import test.model.SyntheticLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Searching stanzas that are already in memory, highlighting any matches.
+ * A few of the patterns are message ids that appear in the log, and the rest are ids that do not.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(MatchBenchmark.STANZAS)
+public class MatchBenchmark {
+    static final int STANZAS = 10_000;
+
+    @Param({"1", "10", "300"})
+    int patterns;
+    @Param({"false", "true"})
+    boolean highlight;
+
+    private List<Stanza> stanzas;
+    private Pattern pattern;
+    private PatternSet patternSet;
+
+    @Setup
+    public void readLog() {
+        LogFile logFile = new LogFile(new SyntheticLog(1, SyntheticLog.Format.DMY).writeTempFile(STANZAS).toString());
+        try (Stream<Stanza> stream = new LogReader(logFile).getStanzas()) {
+            stanzas = stream.filter(s -> !s.isPreamble()).collect(Collectors.toList());
+        }
+        List<Pattern> list = new ArrayList<>();
+        for (int i = 0; i < patterns; i++)
+            list.add(Pattern.compile(i % 100 == 0 ? SyntheticLog.MESSAGE_IDS[i / 100] : String.format("XYZW%04dE", i)));
+        pattern = list.get(0);
+        patternSet = new PatternSet(list);
+    }
+
+    @Benchmark
+    public void stanzaMatch(Blackhole blackhole) {
+        for (Stanza stanza : stanzas) blackhole.consume(highlight ? stanza.match(pattern) : stanza.matches(pattern));
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        for (Stanza stanza : stanzas) blackhole.consume(GrepCommand.search(stanza, patternSet, highlight));
+    }
+}
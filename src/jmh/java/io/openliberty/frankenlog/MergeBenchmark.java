@@ -0,0 +1,62 @@
+package io.openliberty.frankenlog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Merging the same number of times, however many inputs they are spread across.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(MergeBenchmark.TIMES)
+public class MergeBenchmark {
+    static final int TIMES = 200_000;
+
+    @Param({"2", "10", "100", "500"})
+    int inputs;
+
+    private final List<List<Long>> lists = new ArrayList<>();
+
+    @Setup
+    public void createInputs() {
+        Random random = new Random(1);
+        for (int i = 0; i < inputs; i++) {
+            List<Long> times = new ArrayList<>();
+            long time = random.nextInt(1000);
+            for (int j = 0; j < TIMES / inputs; j++) times.add(time += random.nextInt(1000));
+            lists.add(times);
+        }
+    }
+
+    private Stream<Stream<Long>> streams() {
+        return lists.stream().map(List::stream);
+    }
+
+    @Benchmark
+    public void merge(Blackhole blackhole) {
+        MergeUtil.merge(streams(), Long::longValue).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void mergeReadingAhead(Blackhole blackhole) {
+        MergeUtil.mergeReadingAhead(streams(), Long::longValue, Lol.READ_AHEAD_BATCH_SIZE, 4).forEach(blackhole::consume);
+    }
+}
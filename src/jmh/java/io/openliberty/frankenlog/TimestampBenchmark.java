@@ -0,0 +1,61 @@
+package io.openliberty.frankenlog;
+
+import io.openliberty.frankenlog.LogFile.TimestampFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import test.model.SyntheticLog;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing time stamps with the {@link java.time} formatters, as opposed to with a {@link TimestampParser}.
+ * For {@link TimestampFormat#NONE} the time stamps are in all the formats, so each has to be guessed at.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(TimestampBenchmark.TIME_STAMPS)
+public class TimestampBenchmark {
+    static final int TIME_STAMPS = 1024;
+
+    @Param({"DMY", "MDY", "YMD", "ISO", "NONE"})
+    String formatName;
+
+    private TimestampFormat format;
+    private final String[] timeStamps = new String[TIME_STAMPS];
+    private TimestampParser parser;
+
+    @Setup
+    public void createTimeStamps() {
+        format = TimestampFormat.valueOf(formatName);
+        SyntheticLog.Format[] formats = SyntheticLog.Format.values();
+        Random random = new Random(1);
+        for (int i = 0; i < TIME_STAMPS; i++) {
+            SyntheticLog.Format f = format == TimestampFormat.NONE ? formats[random.nextInt(formats.length)] : SyntheticLog.Format.valueOf(format.name());
+            timeStamps[i] = new SyntheticLog(i, f).nextTimeStamp();
+        }
+        parser = new TimestampParser(format);
+    }
+
+    @Benchmark
+    public void formatter(Blackhole blackhole) {
+        for (String timeStamp : timeStamps) blackhole.consume(format.parse(timeStamp));
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole) {
+        for (String timeStamp : timeStamps) blackhole.consume(parser.parse(timeStamp));
+    }
+}
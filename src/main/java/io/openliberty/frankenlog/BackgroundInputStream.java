@@ -0,0 +1,110 @@
+package io.openliberty.frankenlog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream that reads another stream on its own thread, a chunk at a time,
+ * so that decompressing, or waiting for a pipe, overlaps with parsing.
+ * Only a few chunks are read ahead, so a slow consumer holds back the reading thread.
+ */
+class BackgroundInputStream extends InputStream {
+    static final int CHUNK_SIZE = 64 << 10;
+    static final int CHUNKS_AHEAD = 8;
+    /** Marks the end of the chunks */
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS_AHEAD);
+    private final Thread thread;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private byte[] chunk = {};
+    private int position;
+    private boolean finished;
+
+    BackgroundInputStream(String name, InputStream source) {
+        this.thread = new Thread(() -> fill(source), "lol-input " + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void fill(InputStream source) {
+        try (InputStream in = source) {
+            while (!closed) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int length = 0;
+                // hand over what is there rather than wait for a whole chunk from a pipe
+                long start = Stats.now();
+                do {
+                    int n = in.read(buffer, length, CHUNK_SIZE - length);
+                    if (n < 0) break;
+                    length += n;
+                } while (length < CHUNK_SIZE && in.available() > 0);
+                Stats.time(Stats.Phase.READING, start);
+                if (length == 0) break;
+                chunks.put(length == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, length));
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+        } catch (InterruptedException e) {
+            // closed while waiting for room
+            return;
+        }
+        try {
+            chunks.put(END);
+        } catch (InterruptedException ignored) {
+            // closed while waiting for room
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (position == chunk.length) {
+            if (finished) return false;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            position = 0;
+            if (chunk == END) {
+                finished = true;
+                if (failure != null) throw failure;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextChunk() ? chunk[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextChunk()) return -1;
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        finished = true;
+        thread.interrupt();
+        chunks.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package io.openliberty.frankenlog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A stanza that remembers only where it is in a plain log file, and decodes its text from the file each time it is asked for.
+ * It holds no text and no reference to its reader, so a buffered stanza costs a few dozen bytes however long it is.
+ */
+final class CompactStanza extends Stanza {
+    /** Where the stanza's first line starts */
+    private final long offset;
+    /** How many bytes the stanza takes, not counting the end of its last line */
+    private final int length;
+    /** How far into the stanza its text starts, after the time stamp and a space, or 0 for the preamble */
+    private final int textOffset;
+
+    CompactStanza(LogFile logFile, long offset, int length, int textOffset, int lines, long time) {
+        super(logFile, lines, time, null);
+        this.offset = offset;
+        this.length = length;
+        this.textOffset = textOffset;
+    }
+
+    @Override
+    public String getText() {
+        String text = getLogFile().decode(offset + textOffset, length - textOffset);
+        // BufferedReader.readLine() would have removed the carriage returns
+        return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n");
+    }
+
+    /**
+     * @return the undecoded text, or null if it cannot be looked at in place
+     */
+    ByteBuffer getTextBytes() {
+        return getLogFile().bytes(offset + textOffset, length - textOffset);
+    }
+
+    @Override
+    public String getUnformattedTime() {
+        return textOffset == 0 ? "" : getLogFile().decode(offset, textOffset - 1);
+    }
+}
@@ -0,0 +1,170 @@
+package io.openliberty.frankenlog;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A temporary file for the text of the stanzas kept as context, when there are too many to keep in memory.
+ * Stanzas are let go of in the order they were written, so the file is used as a circular buffer,
+ * which only grows when the stanzas still kept do not fit.
+ * <p>
+ * A {@link CompactStanza} is kept as it is, since it holds no text anyway.
+ */
+class ContextSpill implements AutoCloseable {
+    static final int INITIAL_CAPACITY = 1 << 20;
+
+    private FileChannel channel;
+    private long capacity = INITIAL_CAPACITY;
+    /** Where the bytes still in use start, and where they end, counting from the first byte ever written */
+    private long start, end;
+
+    /**
+     * A stanza whose time stamp and text have been written to the file.
+     */
+    private static final class SpilledStanza extends Stanza {
+        private final ContextSpill spill;
+        private final long position;
+        private final int timeLength;
+        private final int length;
+
+        SpilledStanza(ContextSpill spill, Stanza stanza, long position, int timeLength, int length) {
+            super(stanza.getLogFile(), stanza.getLines(), stanza.getEpochNanos(), null);
+            this.spill = spill;
+            this.position = position;
+            this.timeLength = timeLength;
+            this.length = length;
+        }
+
+        @Override
+        public String getText() {
+            return spill.read(position + timeLength, length - timeLength);
+        }
+
+        @Override
+        public String getUnformattedTime() {
+            return spill.read(position, timeLength);
+        }
+    }
+
+    /**
+     * @return a stanza that reads its text back from the file
+     */
+    Stanza spill(Stanza stanza) {
+        if (stanza instanceof CompactStanza) return stanza;
+        byte[] time = stanza.getUnformattedTime().getBytes(UTF_8);
+        byte[] text = stanza.getText().getBytes(UTF_8);
+        int length = time.length + text.length;
+        ensureCapacity(length);
+        long position = end;
+        write(position, ByteBuffer.wrap(time));
+        write(position + time.length, ByteBuffer.wrap(text));
+        end += length;
+        return new SpilledStanza(this, stanza, position, time.length, length);
+    }
+
+    /**
+     * Let go of a stanza, and of every stanza spilled before it.
+     */
+    void release(Stanza stanza) {
+        if (stanza instanceof SpilledStanza) {
+            SpilledStanza spilled = (SpilledStanza) stanza;
+            start = Math.max(start, spilled.position + spilled.length);
+        }
+    }
+
+    /**
+     * Let go of every stanza.
+     */
+    void releaseAll() {
+        start = end = 0;
+    }
+
+    private void ensureCapacity(int length) {
+        try {
+            if (channel == null) channel = open();
+            if (end - start + length <= capacity) return;
+            // copy what is still in use to a bigger file, where each byte is at its position modulo the new capacity
+            long newCapacity = Math.max(2 * capacity, end - start + length);
+            FileChannel bigger = open();
+            ByteBuffer buffer = ByteBuffer.allocate(64 << 10);
+            for (long p = start; p < end; p += buffer.position()) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - p));
+                read(p, buffer);
+                buffer.flip();
+                write(bigger, newCapacity, p, buffer);
+            }
+            channel.close();
+            channel = bigger;
+            capacity = newCapacity;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    private static FileChannel open() throws IOException {
+        Path file = Files.createTempFile("lol-context", ".tmp");
+        return FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+    }
+
+    private String read(long position, int length) {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        try {
+            read(position, bytes);
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+        return new String(bytes.array(), UTF_8);
+    }
+
+    /**
+     * Fill a buffer from the specified position, carrying on at the start of the file if it gets to the end.
+     */
+    private void read(long position, ByteBuffer bytes) throws IOException {
+        for (long p = position; bytes.hasRemaining(); ) {
+            long physical = p % capacity;
+            ByteBuffer part = bytes.duplicate().limit(bytes.position() + (int) Math.min(bytes.remaining(), capacity - physical));
+            int n = channel.read(part, physical);
+            if (n < 0) throw new IOException("The context spill file is shorter than expected");
+            bytes.position(bytes.position() + n);
+            p += n;
+        }
+    }
+
+    private void write(long position, ByteBuffer bytes) {
+        try {
+            write(channel, capacity, position, bytes);
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    private static void write(FileChannel channel, long capacity, long position, ByteBuffer bytes) throws IOException {
+        for (long p = position; bytes.hasRemaining(); ) {
+            long physical = p % capacity;
+            ByteBuffer part = bytes.duplicate().limit(bytes.position() + (int) Math.min(bytes.remaining(), capacity - physical));
+            int n = channel.write(part, physical);
+            bytes.position(bytes.position() + n);
+            p += n;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            throw new IOError(e);
+        } finally {
+            channel = null;
+        }
+    }
+}
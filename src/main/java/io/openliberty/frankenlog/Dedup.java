@@ -0,0 +1,132 @@
+package io.openliberty.frankenlog;
+
+/**
+ * Drops stanzas that have already been seen, e.g. from a region of a log that was rotated into two files,
+ * or from a log that was collected twice.
+ * Two stanzas are the same if they have the same time and the same 64-bit hash of their text.
+ * <p>
+ * Only the stanzas from the last {@link #HORIZON_NANOS} before the latest time seen are remembered,
+ * and no more than {@link #CAPACITY} of those, so the memory used stays the same however much is read.
+ * Merged stanzas come out in time order, so a duplicate is never far behind the stanza it duplicates.
+ * Nothing is kept of a stanza but its time and the hash, held in arrays of primitives:
+ * a ring of them in the order they were seen, for forgetting the oldest,
+ * and an open-addressed table of the keys made from them, for looking them up.
+ */
+final class Dedup {
+    /** How far behind the latest time to remember stanzas, allowing for merged logs that are a little out of order */
+    static final long HORIZON_NANOS = 1_000_000_000L;
+    /** The most stanzas to remember, which must be a power of two */
+    static final int CAPACITY = 1 << 16;
+    /** Marks an empty slot in the table, so no key is ever this */
+    private static final long EMPTY = 0;
+
+    private final long horizonNanos;
+    private final int capacity;
+    /** The ring of the times and keys remembered, oldest first */
+    private final long[] times, keys;
+    private int oldest, size;
+    /** The keys, twice as many slots as the ring holds, found by linear probing */
+    private final long[] table;
+    private final int mask;
+    private long latest = TimestampParser.NO_TIMESTAMP;
+
+    Dedup() {
+        this(HORIZON_NANOS, CAPACITY);
+    }
+
+    Dedup(long horizonNanos, int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("The capacity must be a power of two, not " + capacity);
+        this.horizonNanos = horizonNanos;
+        this.capacity = capacity;
+        this.times = new long[capacity];
+        this.keys = new long[capacity];
+        this.table = new long[2 * capacity];
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * @return whether the stanza has not been seen before, remembering it if not
+     */
+    boolean isFirst(Stanza stanza) {
+        long time = stanza.getEpochNanos();
+        if (time > latest) latest = time;
+        // the preambles come before any time stamps, and are kept until the first one
+        if (latest != TimestampParser.NO_TIMESTAMP) forget(latest - horizonNanos);
+        long key = key(time, hash(stanza.getText()));
+        int slot = find(key);
+        if (table[slot] == key) {
+            if (Stats.enabled) Stats.duplicates.increment();
+            return false;
+        }
+        table[slot] = key;
+        if (size == capacity) forgetOldest();
+        int newest = (oldest + size++) & (capacity - 1);
+        times[newest] = time;
+        keys[newest] = key;
+        return true;
+    }
+
+    /**
+     * Forget the stanzas from before a time.
+     */
+    private void forget(long before) {
+        while (size > 0 && times[oldest] < before) forgetOldest();
+    }
+
+    private void forgetOldest() {
+        remove(keys[oldest]);
+        oldest = (oldest + 1) & (capacity - 1);
+        size--;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would go
+     */
+    private int find(long key) {
+        int slot = spread(key);
+        while (table[slot] != EMPTY && table[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Empty a key's slot, moving back any keys after it that could not otherwise be found.
+     */
+    private void remove(long key) {
+        int gap = find(key);
+        if (table[gap] == EMPTY) return;
+        table[gap] = EMPTY;
+        for (int slot = (gap + 1) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int home = spread(table[slot]);
+            // move the key back into the gap if its home is not between the gap and where it is now
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                table[gap] = table[slot];
+                table[slot] = EMPTY;
+                gap = slot;
+            }
+        }
+    }
+
+    private int spread(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private static long key(long time, long hash) {
+        long key = hash ^ (time * 0x9E3779B97F4A7C15L);
+        return key == EMPTY ? 1 : key;
+    }
+
+    /**
+     * @return the 64-bit FNV-1a hash of some text, mixed so that every bit of it depends on every character
+     */
+    static long hash(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,146 @@
+package io.openliberty.frankenlog;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Java Flight Recorder events for the hot paths, so a recording shows which file or pattern is slowing a run down.
+ * They are all disabled unless a recording's settings enable them, e.g. with <code>lol.jfc</code>,
+ * and a disabled event costs no more than creating an object that never leaves the method.
+ */
+final class Events {
+    private static final String CATEGORY = "Logs of Open Liberty";
+
+    private Events() {}
+
+    @Name("io.openliberty.frankenlog.FileOpen")
+    @Label("Log File Open")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class FileOpen extends Event {
+        @Label("File")
+        String file;
+        @Label("Reader")
+        String reader;
+    }
+
+    @Name("io.openliberty.frankenlog.FileClose")
+    @Label("Log File Close")
+    @Description("The time a log file was open, and what was read from it")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class FileClose extends Event {
+        @Label("File")
+        String file;
+        @Label("Bytes")
+        @Description("The bytes read, where the reader knows them")
+        @DataAmount
+        long bytes;
+        @Label("Lines")
+        long lines;
+        @Label("Stanzas")
+        long stanzas;
+    }
+
+    @Name("io.openliberty.frankenlog.ChunkParsed")
+    @Label("Chunk Parsed")
+    @Description("A range of a log file parsed into stanzas ahead of being read")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ChunkParsed extends Event {
+        @Label("File")
+        String file;
+        @Label("Offset")
+        long offset;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Stanzas")
+        int stanzas;
+    }
+
+    @Name("io.openliberty.frankenlog.MergeStall")
+    @Label("Merge Stall")
+    @Description("The merge waiting for the next stanza from one of its inputs")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class MergeStall extends Event {
+        @Label("Input")
+        @Description("The file of the input waited for, or its position amongst the inputs")
+        String input;
+    }
+
+    @Name("io.openliberty.frankenlog.PatternSearch")
+    @Label("Pattern Search")
+    @Description("A batch of stanzas searched for the patterns")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class PatternSearch extends Event {
+        @Label("File")
+        String file;
+        @Label("Patterns")
+        String patterns;
+        @Label("Stanzas")
+        int stanzas;
+        @Label("Matches")
+        int matches;
+    }
+
+    @Name("io.openliberty.frankenlog.OutputFlush")
+    @Label("Output Flush")
+    @Description("A buffer of output written by the writer thread")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class OutputFlush extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * One stream of a log file, however many readers it takes, e.g. one for each range of a large file:
+     * a {@link FileOpen} when it starts, and a {@link FileClose} with everything read when it ends.
+     */
+    static final class FileStream {
+        private final FileClose closing = new FileClose();
+        private boolean closed;
+
+        FileStream(LogFile lf, String reader) {
+            FileOpen open = new FileOpen();
+            if (open.shouldCommit()) {
+                open.file = lf.filename;
+                open.reader = reader;
+                open.commit();
+            }
+            closing.file = lf.filename;
+            closing.begin();
+        }
+
+        synchronized void add(long bytes, long lines, long stanzas) {
+            closing.bytes += bytes;
+            closing.lines += lines;
+            closing.stanzas += stanzas;
+        }
+
+        synchronized void close() {
+            if (closed) return;
+            closed = true;
+            closing.end();
+            if (closing.shouldCommit()) closing.commit();
+        }
+    }
+}
@@ -1,15 +1,23 @@
 package io.openliberty.frankenlog;
 
 import java.util.AbstractQueue;
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Consumer;
 
+/**
+ * A queue of at most a fixed number of items, which drops the oldest item to make room for a new one.
+ * The items are kept in a circular buffer, so adding, removing and looking up an item take constant time.
+ */
 public class FifoFixedSizeQueue<E> extends AbstractQueue<E> {
 
     /** The queued items */
     final Object[] items;
 
+    /** Where the oldest item is */
+    int head;
+
     /** Number of elements in the queue */
     int count;
 
@@ -17,20 +25,32 @@ public class FifoFixedSizeQueue<E> extends AbstractQueue<E> {
         super();
 
         items = new Object[capacity];
+        head = 0;
         count = 0;
     }
 
     @Override
     public boolean offer(E e) {
+        push(e);
+        return true;
+    }
+
+    /**
+     * Add an item, dropping the oldest if the queue is full.
+     *
+     * @return the item that was dropped, or null if none was
+     */
+    public E push(E e) {
         if (e == null) {
             throw new NullPointerException("Queue doesn't allow nulls");
         }
-        if (count == items.length) {
-            this.poll();
+        if (items.length == 0) {
+            return e;
         }
-        this.items[count] = e;
+        E dropped = count == items.length ? poll() : null;
+        items[index(count)] = e;
         count++;
-        return true;
+        return dropped;
     }
 
     @Override
@@ -38,29 +58,33 @@ public class FifoFixedSizeQueue<E> extends AbstractQueue<E> {
         if (count <= 0) {
             return null;
         }
-        E item = (E) items[0];
-        shiftLeft();
+        E item = get(0);
+        items[head] = null;
+        head = index(1);
         count--;
         return item;
     }
 
-    private void shiftLeft() {
-        int i = 1;
-        while (i < items.length) {
-            if (items[i] == null) {
-                break;
-            }
-            items[i - 1] = items[i];
-            i++;
-        }
-    }
-
     @Override
     public E peek() {
         if (count <= 0) {
             return null;
         }
-        return (E) items[0];
+        return get(0);
+    }
+
+    /**
+     * @return the item at the specified position, counting from the oldest
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int i) {
+        Objects.checkIndex(i, count);
+        return (E) items[index(i)];
+    }
+
+    private int index(int i) {
+        int j = head + i;
+        return j < items.length ? j : j - items.length;
     }
 
     @Override
@@ -69,11 +93,38 @@ public class FifoFixedSizeQueue<E> extends AbstractQueue<E> {
     }
 
     @Override
-    public Iterator<E> iterator() {
-        List<E> list = new ArrayList<>(count);
+    public void clear() {
         for (int i = 0; i < count; i++) {
-            list.add((E) items[i]);
+            items[index(i)] = null;
         }
-        return list.iterator();
+        head = 0;
+        count = 0;
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        for (int i = 0; i < count; i++) {
+            action.accept(get(i));
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,14 @@
+package io.openliberty.frankenlog;
+
+import picocli.CommandLine.Option;
+
+/**
+ * The options for following log files as they grow.
+ */
+class FollowOptions {
+    @Option(names = "--follow", description = "Keep reading the log files as they grow, merging new stanzas as they arrive, until interrupted or until the end of the --until window")
+    boolean follow;
+
+    @Option(names = "--lateness", paramLabel = "ms", defaultValue = "1000", description = "With --follow, how long a stanza waits for a quiet log file before it is printed anyway")
+    long latenessMillis;
+}
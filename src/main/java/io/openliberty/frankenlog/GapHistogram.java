@@ -0,0 +1,112 @@
+package io.openliberty.frankenlog;
+
+import java.util.Arrays;
+
+/**
+ * How the time gaps between stanzas are distributed.
+ * The gaps are counted in buckets whose width grows with the gap, each power of two being split into {@link #SUB_BUCKETS},
+ * so that a few hundred counters cover every gap to within an eighth.
+ * Recording a gap allocates nothing, and the histograms of several files can be added together.
+ */
+class GapHistogram {
+    static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int BAR_WIDTH = 40;
+
+    private final long[] counts = new long[bucket(Long.MAX_VALUE) + 1];
+    private long count;
+    private long max;
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+    }
+
+    static long lowestIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private long highestIn(int bucket) {
+        return bucket + 1 < counts.length ? lowestIn(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param nanos the size of a gap, which must not be negative
+     */
+    void record(long nanos) {
+        counts[bucket(nanos)]++;
+        count++;
+        max = Math.max(max, nanos);
+    }
+
+    GapHistogram add(GapHistogram that) {
+        for (int i = 0; i < counts.length; i++) this.counts[i] += that.counts[i];
+        this.count += that.count;
+        this.max = Math.max(this.max, that.max);
+        return this;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the size that the specified percentage of the gaps are no bigger than, to within the width of a bucket
+     */
+    long percentile(double percent) {
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestIn(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Print a bar for the gaps of no time at all, and for each power of two between the smallest other gap and the biggest,
+     * followed by some percentiles.
+     */
+    void print(OutputSink out) {
+        if (count == 0) {
+            out.println("Log file does not have two lines with timestamps");
+            return;
+        }
+        long[] rows = new long[counts.length / SUB_BUCKETS];
+        for (int i = 1; i < counts.length; i++) rows[i / SUB_BUCKETS] += counts[i];
+        long most = Math.max(counts[0], Arrays.stream(rows).max().orElse(0));
+        out.println("Time gaps: " + count);
+        if (counts[0] > 0) out.println(String.format("%8s    %-8s %12d %s", "0", "", counts[0], bar(counts[0], most)));
+        int first = 0, last = rows.length - 1;
+        while (first <= last && rows[first] == 0) first++;
+        while (last >= first && rows[last] == 0) last--;
+        for (int row = first; row <= last; row++) {
+            long from = lowestIn(Math.max(1, row * SUB_BUCKETS)), to = highestIn(row * SUB_BUCKETS + SUB_BUCKETS - 1);
+            out.println(String.format("%8s .. %-8s %12d %s", format(from), format(to), rows[row], bar(rows[row], most)));
+        }
+        out.println("p50 = " + format(percentile(50)));
+        out.println("p90 = " + format(percentile(90)));
+        out.println("p99 = " + format(percentile(99)));
+        out.println("max = " + format(max));
+    }
+
+    private static String bar(long count, long most) {
+        return "#".repeat((int) Math.ceil((double) BAR_WIDTH * count / most));
+    }
+
+    static String format(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return String.format("%.1fus", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format("%.1fms", nanos / 1e6);
+        if (nanos < 60_000_000_000L) return String.format("%.1fs", nanos / 1e9);
+        if (nanos < 3_600_000_000_000L) return String.format("%.1fm", nanos / 6e10);
+        return String.format("%.1fh", nanos / 3.6e12);
+    }
+}
@@ -2,32 +2,70 @@ package io.openliberty.frankenlog;
 
 import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.ParentCommand;
+import picocli.CommandLine.Spec;
 
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.function.Predicate.not;
-import static picocli.CommandLine.Help.Ansi.Style.faint;
 
-@Command(name = "grep", description = "Search for lines with string patterns in your log file ")
+@Command(name = "grep", description = "Search for lines with string patterns in your log files")
 public class GrepCommand implements Callable<Integer> {
     @ParentCommand
     private Lol frankenLog;
+    @Spec
+    private CommandSpec spec;
     @ArgGroup
     private ContextOption contextOption;
-    @Parameters(paramLabel = "pattern", description = "The regex pattern you want to find in the logfile")
-    private Pattern pattern;
+    @Mixin
+    private TimeWindow window;
+    @Mixin
+    private FollowOptions follow;
+    @Option(names = {"-e", "--regexp"}, paramLabel = "pattern", description = "A regex pattern you want to find; repeat it to find any of several patterns")
+    private List<Pattern> expressions = new ArrayList<>();
+    @Option(names = "--spill-context", description = "Keep the context stanzas in a temporary file instead of in memory, for very large -A, -B or -C")
+    private boolean spillContext;
+    @Option(names = {"-f", "--file"}, paramLabel = "patternfile", description = "A file of regex patterns you want to find, one per line, ignoring blank lines")
+    private List<Path> patternFiles = new ArrayList<>();
     @Parameters(
-            paramLabel = "log file",
-            converter = LogFile.Converter.class,
-            description = "The logfiles you want to search through"
+            arity = "1..*",
+            paramLabel = "[pattern] log file",
+            description = {
+                    "The regex pattern you want to find in the logfile, unless there is a -e or -f option",
+                    "The logfiles you want to search through: a .gz file, a .zip archive or an entry in one (archive.zip!entry), or - for the standard input"
+            }
     )
-    private LogFile logFile;
+    private List<String> arguments;
+    private PatternSet patterns;
+    private List<LogFile> logFiles;
+    /** The context for the file currently being printed */
+    private ContextPrinter buffer;
+    private OutputSink out;
+    private boolean matchedCurrentFile;
 
     GrepCommand() {
     }
@@ -47,81 +85,126 @@ public class GrepCommand implements Callable<Integer> {
         Integer context;
     }
 
-    interface ContextPrinter {
+    /**
+     * Prints the context around each match.
+     * The stanzas kept for context are held in circular buffers,
+     * and in a {@link ContextSpill} rather than in memory if asked.
+     */
+    interface ContextPrinter extends AutoCloseable {
         default boolean peek(Stanza stanza) { return false; }
         default void match(Stanza stanza) {}
         default void printRemaining() {}
-
-        static void print(Stanza stanza) {
-            System.out.println(faint.on() + stanza + faint.off());
-        }
+        @Override
+        default void close() {}
 
         ContextPrinter NULL_BUFFER = new ContextPrinter() {};
 
-        class BeforeContext implements ContextPrinter {
+        /**
+         * Stanzas kept for context, which remembers the last one added as it was before it was spilled,
+         * so that a match just added can be left out.
+         */
+        class Kept {
             final FifoFixedSizeQueue<Stanza> queue;
+            final ContextSpill spill;
+            Stanza last;
+
+            Kept(int capacity, boolean spill) {
+                this.queue = new FifoFixedSizeQueue<>(capacity);
+                this.spill = spill ? new ContextSpill() : null;
+            }
+
+            void add(Stanza stanza) {
+                Stanza dropped = queue.push(spill == null ? stanza : spill.spill(stanza));
+                if (dropped != null && spill != null) spill.release(dropped);
+                last = stanza;
+            }
+
+            /**
+             * Print the stanzas kept, apart from the specified one, and forget them.
+             */
+            void printExcept(Stanza stanza, Consumer<Stanza> printer) {
+                int n = queue.size() - (stanza != null && stanza == last && !queue.isEmpty() ? 1 : 0);
+                for (int i = 0; i < n; i++) printer.accept(queue.get(i));
+                clear();
+            }
+
+            void clear() {
+                queue.clear();
+                last = null;
+                if (spill != null) spill.releaseAll();
+            }
+
+            void close() {
+                if (spill != null) spill.close();
+            }
+        }
+
+        class BeforeContext implements ContextPrinter {
+            final Kept kept;
+            final Consumer<Stanza> printer;
 
-            public BeforeContext(int num) {
+            public BeforeContext(int num, Consumer<Stanza> printer, boolean spill) {
+                this.printer = printer;
                 //Store an extra stanza because peek is called before match, so there will be an extra stanza in queue that needs to be removed which is the matched stanza
-                queue = new FifoFixedSizeQueue<>(num + 1);
+                kept = new Kept(num + 1, spill);
             }
 
             public boolean peek(Stanza stanza) {
-                queue.add(stanza);
+                kept.add(stanza);
                 return false;
             }
 
             public void match(Stanza stanza) {
-                queue.stream().filter(not(stanza::equals)).forEach(ContextPrinter::print);
-                queue.clear();
+                kept.printExcept(stanza, printer);
             }
+
+            public void close() { kept.close(); }
         }
 
         class AfterContext implements ContextPrinter {
             final int num;
             int linesToPrint;
-            final List<Stanza> list;
+            final Kept kept;
+            final Consumer<Stanza> printer;
 
-            public AfterContext(int num) {
+            public AfterContext(int num, Consumer<Stanza> printer, boolean spill) {
                 this.num = num;
-                list = new ArrayList<>(num);
+                this.printer = printer;
+                kept = new Kept(num, spill);
             }
 
             public boolean peek(Stanza stanza) {
                 if (linesToPrint > 0) {
-                    list.add(stanza);
+                    kept.add(stanza);
                     linesToPrint--;
                     return true;
                 }
-                list.forEach(ContextPrinter::print);
-                list.clear();
+                kept.printExcept(null, printer);
                 return false;
             }
 
             public void match(Stanza stanza) {
                 //Flush any stored context
-                list.stream().filter(not(stanza::equals)).forEach(ContextPrinter::print);
+                kept.printExcept(stanza, printer);
                 //Record next num of stanzas to print
-                list.clear();
                 linesToPrint = num;
             }
 
             public void printRemaining() {
                 //Used to print the remaining lines in the log fle after the last match if the remaining lines is less than user's inputted number
-                if (!list.isEmpty()) {
-                    list.forEach(ContextPrinter::print);
-                    list.clear();
-                }
+                kept.printExcept(null, printer);
             }
+
+            public void close() { kept.close(); }
         }
 
         class Context implements ContextPrinter {
             AfterContext ac;
             BeforeContext bc;
 
-            public Context(int num) {
-                ac = new AfterContext(num);
-                bc = new BeforeContext(num);
+            public Context(int num, Consumer<Stanza> printer, boolean spill) {
+                ac = new AfterContext(num, printer, spill);
+                bc = new BeforeContext(num, printer, spill);
             }
 
             public boolean peek(Stanza stanza) {
@@ -134,26 +217,186 @@ public class GrepCommand implements Callable<Integer> {
             }
 
             public void printRemaining() { ac.printRemaining(); }
+
+            public void close() {
+                ac.close();
+                bc.close();
+            }
         }
 
-        static ContextPrinter of(ContextOption option) {
+        static ContextPrinter of(ContextOption option, Consumer<Stanza> printer, boolean spill) {
             if (option == null) return NULL_BUFFER;
-            if (option.before != null) return new ContextPrinter.BeforeContext(option.before);
-            if (option.after != null) return new ContextPrinter.AfterContext(option.after);
-            if (option.context != null) return new ContextPrinter.Context(option.context);
+            if (option.before != null) return new ContextPrinter.BeforeContext(option.before, printer, spill);
+            if (option.after != null) return new ContextPrinter.AfterContext(option.after, printer, spill);
+            if (option.context != null) return new ContextPrinter.Context(option.context, printer, spill);
             return NULL_BUFFER;
         }
     }
 
+    /**
+     * The stanzas from one file are searched in chunks of this many, one chunk per task.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    /**
+     * A run of consecutive stanzas from one file, and the highlighted text of the ones that match.
+     */
+    private static class Chunk {
+        final LogFile logFile;
+        final Stanza[] stanzas;
+        final CharSequence[] matches;
+        final boolean last;
+
+        Chunk(LogFile logFile, Iterator<Stanza> iterator) {
+            this.logFile = logFile;
+            List<Stanza> list = new ArrayList<>(CHUNK_SIZE);
+            while (list.size() < CHUNK_SIZE && iterator.hasNext()) list.add(iterator.next());
+            this.stanzas = list.toArray(new Stanza[0]);
+            this.matches = new CharSequence[stanzas.length];
+            this.last = !iterator.hasNext();
+        }
+
+        /**
+         * @param highlight whether to work out the highlighted text of each match, or just mark it with the unhighlighted text
+         */
+        Chunk search(PatternSet patterns, boolean highlight) {
+            Events.PatternSearch event = new Events.PatternSearch();
+            event.begin();
+            long start = Stats.now();
+            for (int i = 0; i < stanzas.length; i++) matches[i] = GrepCommand.search(stanzas[i], patterns, highlight);
+            Stats.time(Stats.Phase.MATCHING, start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = logFile.filename;
+                event.patterns = patterns.toString();
+                event.stanzas = stanzas.length;
+                event.matches = (int) Arrays.stream(matches).filter(Objects::nonNull).count();
+                event.commit();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @return the highlighted text of a stanza that matches, or the empty string if there is no need to highlight it,
+     * or null if it does not match
+     */
+    static CharSequence search(Stanza stanza, PatternSet patterns, boolean highlight) {
+        String text = stanza.getText();
+        int[] found = patterns.find(text, highlight);
+        if (found == null) return null;
+        return highlight ? PatternSet.highlight(stanza.getUnformattedTime(), text, found) : "";
+    }
+
+    /**
+     * Work out the patterns, from the options or else the first argument, and the log files, from the rest of the arguments.
+     */
+    void parseArguments() {
+        List<Pattern> list = new ArrayList<>(expressions);
+        for (Path file : patternFiles) {
+            try {
+                for (String line : Files.readAllLines(file, Charset.defaultCharset()))
+                    if (!line.isBlank()) list.add(Pattern.compile(line));
+            } catch (IOException e) {
+                throw new IOError(e);
+            } catch (PatternSyntaxException e) {
+                throw new ParameterException(spec.commandLine(), "Invalid pattern in " + file + ": " + e.getMessage());
+            }
+        }
+        List<String> files = arguments;
+        if (expressions.isEmpty() && patternFiles.isEmpty()) {
+            if (arguments.size() < 2) throw new ParameterException(spec.commandLine(), "Missing required parameter: 'log file'");
+            try {
+                list.add(Pattern.compile(arguments.get(0)));
+            } catch (PatternSyntaxException e) {
+                throw new ParameterException(spec.commandLine(), "Invalid pattern: " + e.getMessage());
+            }
+            files = arguments.subList(1, arguments.size());
+        }
+        if (list.isEmpty()) throw new ParameterException(spec.commandLine(), "No patterns to find");
+        patterns = new PatternSet(list);
+        LogFile.Converter converter = new LogFile.Converter();
+        logFiles = LogFile.expand(files.stream().map(converter::convert).collect(Collectors.toList()));
+    }
+
     void execute() {
-        ContextPrinter buffer = ContextPrinter.of(contextOption);
-        logFile.stream()
-                .filter(not(Stanza::isPreamble))
-                .peek(buffer::peek)
-                .filter(stanza -> stanza.matches(pattern))
-                .peek(buffer::match)
-                .map(stanza -> stanza.match(pattern))
-                .forEach(System.out::println);
-        buffer.printRemaining();
+        parseArguments();
+        try (OutputSink sink = OutputSink.toStandardOutput()) {
+            execute(sink);
+        }
+    }
+
+    /**
+     * Search the files once the arguments have been parsed, printing to the specified sink.
+     */
+    void execute(OutputSink sink) {
+        out = sink;
+        if (follow.follow) follow();
+        else search();
+    }
+
+    private void search() {
+        // search the chunks in parallel, but print them in order so the context can be worked out as before
+        final int readAhead = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        final Deque<ForkJoinTask<Chunk>> searching = new ArrayDeque<>();
+        final boolean highlight = out.getMode() == OutputSink.Mode.ANSI;
+        for (LogFile logFile : logFiles) {
+            try (Stream<Stanza> stream = TimeWindow.stream(logFile, window)) {
+                Iterator<Stanza> stanzas = stream.filter(not(Stanza::isPreamble)).iterator();
+                do {
+                    Chunk chunk = new Chunk(logFile, stanzas);
+                    searching.addLast(ForkJoinPool.commonPool().submit(() -> chunk.search(patterns, highlight)));
+                    while (searching.size() >= readAhead) print(searching.removeFirst().join());
+                } while (stanzas.hasNext());
+            }
+        }
+        while (!searching.isEmpty()) print(searching.removeFirst().join());
+    }
+
+    private void print(Chunk chunk) {
+        if (buffer == null) buffer = ContextPrinter.of(contextOption, out::printContext, spillContext);
+        for (int i = 0; i < chunk.stanzas.length; i++) {
+            Stanza stanza = chunk.stanzas[i];
+            buffer.peek(stanza);
+            if (chunk.matches[i] == null) continue;
+            // name each file before its first match when there is more than one
+            if (!matchedCurrentFile && logFiles.size() > 1) out.println("==> " + chunk.logFile.filename + " <==");
+            matchedCurrentFile = true;
+            buffer.match(stanza);
+            out.printMatch(stanza, chunk.matches[i]);
+        }
+        if (chunk.last) {
+            buffer.printRemaining();
+            buffer.close();
+            buffer = null;
+            matchedCurrentFile = false;
+        }
+    }
+
+    /**
+     * Search the files as they grow, as one merged log, naming each file before its matches when there is more than one.
+     */
+    private void follow() {
+        LogFile printing = null;
+        final boolean highlight = out.getMode() == OutputSink.Mode.ANSI;
+        try (ContextPrinter context = ContextPrinter.of(contextOption, out::printContext, spillContext);
+             Stream<Stanza> stream = LiveMerge.stream(logFiles, window, follow.latenessMillis)) {
+            for (Iterator<Stanza> stanzas = stream.filter(not(Stanza::isPreamble)).iterator(); stanzas.hasNext(); ) {
+                Stanza stanza = stanzas.next();
+                context.peek(stanza);
+                long start = Stats.now();
+                CharSequence match = search(stanza, patterns, highlight);
+                Stats.time(Stats.Phase.MATCHING, start);
+                if (match != null) {
+                    if (stanza.getLogFile() != printing && logFiles.size() > 1) out.println("==> " + stanza.getLogFile().filename + " <==");
+                    printing = stanza.getLogFile();
+                    context.match(stanza);
+                    out.printMatch(stanza, match);
+                }
+                // print each match, and its context, as soon as it is found
+                out.flush();
+            }
+            context.printRemaining();
+        }
     }
 }
@@ -0,0 +1,195 @@
+package io.openliberty.frankenlog;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Pulls a few fields out of a line of a Liberty JSON log, e.g.
+ * <code>{"type":"liberty_message",...,"ibm_datetime":"2019-03-01T15:57:32.780+0000",...,"message":"CWWKF0011I: ..."}</code>,
+ * in one pass over the line.
+ * Only the values of the fields it looks for are decoded; everything else is skipped over without creating anything.
+ * <p>
+ * An instance is reused for line after line, so each reader should have its own.
+ */
+final class JsonLine {
+    private static final String DATETIME_FIELD = "\"ibm_datetime\"";
+    private static final String[] NAMES = {"ibm_datetime", "message", "ibm_threadId", "module", "loglevel", "ibm_stackTrace"};
+    private static final int DATETIME = 0, MESSAGE = 1, THREAD = 2, MODULE = 3, LEVEL = 4, STACK_TRACE = 5;
+    /** The letters the text layout uses for the levels */
+    private static final Map<String, String> LEVELS = Map.ofEntries(
+            Map.entry("FATAL", "F"), Map.entry("ERROR", "E"), Map.entry("WARNING", "W"), Map.entry("AUDIT", "A"),
+            Map.entry("INFO", "I"), Map.entry("CONFIG", "C"), Map.entry("DETAIL", "D"), Map.entry("EVENT", "1"),
+            Map.entry("FINE", "1"), Map.entry("FINER", "2"), Map.entry("FINEST", "3"), Map.entry("ENTRY", ">"), Map.entry("EXIT", "<"),
+            Map.entry("SystemOut", "O"), Map.entry("SystemErr", "R"));
+
+    /** Thrown when the line turns out not to be a JSON object, which is rare enough not to need a stack trace */
+    private static final RuntimeException MALFORMED = new RuntimeException("Not a JSON object", null, false, false) {};
+
+    private final String[] values = new String[NAMES.length];
+    private String line;
+    private int pos;
+    private String timeStamp;
+
+    /**
+     * A quick check that a line might be a stanza of a JSON log, without parsing it.
+     */
+    static boolean isStanza(String line) {
+        return line.startsWith("{") && line.contains(DATETIME_FIELD);
+    }
+
+    /**
+     * @return whether the line is a JSON object with a time stamp, in which case its fields can be asked for
+     */
+    boolean parse(String line) {
+        Arrays.fill(values, null);
+        this.timeStamp = null;
+        this.line = line;
+        this.pos = 0;
+        try {
+            skipSpace();
+            expect('{');
+            skipSpace();
+            if (peek() == '}') return false;
+            for (char c = ','; c != '}'; c = next()) {
+                if (c != ',') throw MALFORMED;
+                skipSpace();
+                int field = key();
+                skipSpace();
+                expect(':');
+                skipSpace();
+                if (field >= 0 && peek() == '"') values[field] = string();
+                else skipValue();
+                skipSpace();
+            }
+            return values[DATETIME] != null;
+        } catch (RuntimeException e) {
+            if (e != MALFORMED && !(e instanceof IndexOutOfBoundsException)) throw e;
+            return false;
+        }
+    }
+
+    /**
+     * @return the time stamp in the form the text layout's time stamps are in, e.g. <code>[2019-03-01T15:57:32.780+0000]</code>
+     */
+    String getTimeStamp() {
+        if (timeStamp == null) timeStamp = "[" + values[DATETIME] + "]";
+        return timeStamp;
+    }
+
+    /**
+     * @return the text that the stanza would have in the text layout: the thread, the module, the level and the message,
+     * followed by any stack trace, or the whole line if there is no message
+     */
+    String getText() {
+        if (values[MESSAGE] == null) return line;
+        StringBuilder text = new StringBuilder();
+        if (values[THREAD] != null) text.append(values[THREAD]).append(' ');
+        if (values[MODULE] != null) text.append(values[MODULE]).append(' ');
+        if (values[LEVEL] != null) text.append(LEVELS.getOrDefault(values[LEVEL], values[LEVEL])).append(' ');
+        text.append(values[MESSAGE]);
+        if (values[STACK_TRACE] != null) text.append('\n').append(values[STACK_TRACE]);
+        return text.toString();
+    }
+
+    private char peek() {
+        return line.charAt(pos);
+    }
+
+    private char next() {
+        return line.charAt(pos++);
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw MALFORMED;
+    }
+
+    private void skipSpace() {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+    }
+
+    /**
+     * Read a key, comparing it with the names in place.
+     *
+     * @return the index of the name, or -1 if it is not one of the names
+     */
+    private int key() {
+        int start = pos + 1;
+        int end = skipString();
+        if (line.lastIndexOf('\\', end) >= start) {
+            // keys with escapes are too rare to be worth comparing in place
+            pos = start - 1;
+            return Arrays.asList(NAMES).indexOf(string());
+        }
+        for (int i = 0; i < NAMES.length; i++)
+            if (NAMES[i].length() == end - start && line.regionMatches(start, NAMES[i], 0, end - start)) return i;
+        return -1;
+    }
+
+    /**
+     * Skip over a string.
+     *
+     * @return the position of its closing quote
+     */
+    private int skipString() {
+        expect('"');
+        for (char c = next(); c != '"'; c = next()) if (c == '\\') pos++;
+        return pos - 1;
+    }
+
+    private String string() {
+        int start = pos + 1;
+        int end = skipString();
+        int escape = line.indexOf('\\', start);
+        if (escape < 0 || escape > end) return line.substring(start, end);
+        StringBuilder s = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            c = line.charAt(++i);
+            switch (c) {
+                case 'n': s.append('\n'); break;
+                case 'r': s.append('\r'); break;
+                case 't': s.append('\t'); break;
+                case 'b': s.append('\b'); break;
+                case 'f': s.append('\f'); break;
+                case 'u':
+                    int code = 0;
+                    for (int j = 1; j <= 4; j++) {
+                        int digit = i + j < end ? Character.digit(line.charAt(i + j), 16) : -1;
+                        if (digit < 0) throw MALFORMED;
+                        code = code << 4 | digit;
+                    }
+                    s.append((char) code);
+                    i += 4;
+                    break;
+                default: s.append(c);
+            }
+        }
+        return s.toString();
+    }
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peek();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+                pos++;
+            } while (depth > 0);
+        } else {
+            // a number, true, false or null
+            while (pos < line.length() && ",}] \t".indexOf(line.charAt(pos)) < 0) pos++;
+        }
+    }
+}
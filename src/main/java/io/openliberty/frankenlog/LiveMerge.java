@@ -0,0 +1,273 @@
+package io.openliberty.frankenlog;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+import static io.openliberty.frankenlog.TimestampParser.toEpochNanos;
+
+/**
+ * Merges log files that are still being written, following each one with a {@link TailingLogReader}.
+ * A stanza is only handed on once every other file has moved past its time,
+ * so the stanzas come out in the order that merging the finished files would give.
+ * A file that goes quiet holds up the others for no longer than the lateness,
+ * after which their stanzas are handed on without waiting for it.
+ * <p>
+ * The files are polled when a {@link WatchService} says their directories have changed,
+ * and at least every {@link #POLL_INTERVAL_MILLIS} anyway, since on some platforms the watch service is slow to notice.
+ * Each poll only reads what has been appended, so nothing is read twice,
+ * and a file with {@link #MAX_QUEUED} stanzas waiting is not polled until some have been handed on.
+ * A file that cannot grow, such as a compressed one, is read once, and then counts as having moved past every time.
+ */
+class LiveMerge implements Spliterator<Stanza>, AutoCloseable {
+    static final long POLL_INTERVAL_MILLIS = 250;
+    /** How many stanzas to take from a file that cannot grow on each poll */
+    private static final int BATCH_SIZE = 1024;
+    /**
+     * How many stanzas a file may have waiting before it is no longer polled, so a busy file held up by a quiet one does not fill the heap.
+     * The last poll before it stops may have read up to {@link TailingLogReader#MAX_READ_PER_POLL} more.
+     */
+    static final int MAX_QUEUED = 10_000;
+
+    private final List<Input> inputs;
+    private final long latenessNanos;
+    private final long sinceNanos;
+    private final long untilNanos;
+    private final WatchService watcher;
+
+    /**
+     * One of the files being followed, and the stanzas read from it that have not been handed on yet.
+     */
+    private final class Input {
+        final int index;
+        final TailingLogReader tail;
+        final Stream<Stanza> finiteStream;
+        final Iterator<Stanza> finite;
+        /** The stanzas waiting, in a ring starting at {@code head} */
+        Stanza[] queue = new Stanza[16];
+        /** When each waiting stanza was read, on the {@link System#nanoTime()} clock */
+        long[] arrivals = new long[16];
+        int head;
+        int size;
+        boolean finished;
+
+        Input(int index, LogFile lf, long offset) {
+            this.index = index;
+            this.tail = lf.isPlainFile() ? new TailingLogReader(lf, offset) : null;
+            if (tail != null) tail.recorded();
+            this.finiteStream = tail == null ? lf.stream() : null;
+            this.finite = tail == null ? finiteStream.iterator() : null;
+        }
+
+        boolean poll(long now) {
+            // leave the rest on disk until the merge catches up
+            if (size >= MAX_QUEUED) return false;
+            int before = size;
+            if (tail != null) {
+                tail.poll(this::accept);
+                tail.flushIfQuiet(now, latenessNanos, this::accept);
+                // the stanza still being read is already past the end of the window
+                if (tail.getLatestTime() > untilNanos) finished = true;
+            } else if (!finished) {
+                for (int i = 0; i < BATCH_SIZE && !finished && finite.hasNext(); i++) accept(finite.next());
+                finished |= !finite.hasNext();
+            }
+            return size > before;
+        }
+
+        void accept(Stanza stanza) {
+            if (stanza.isPreamble() ? sinceNanos != Long.MIN_VALUE : stanza.getEpochNanos() < sinceNanos) return;
+            if (!stanza.isPreamble() && stanza.getEpochNanos() > untilNanos) {
+                finished = true;
+                return;
+            }
+            if (finished) return;
+            if (size == queue.length) grow();
+            int tailIndex = (head + size++) % queue.length;
+            queue[tailIndex] = stanza;
+            arrivals[tailIndex] = System.nanoTime();
+        }
+
+        private void grow() {
+            Stanza[] newQueue = new Stanza[queue.length * 2];
+            long[] newArrivals = new long[queue.length * 2];
+            for (int i = 0; i < size; i++) {
+                newQueue[i] = queue[(head + i) % queue.length];
+                newArrivals[i] = arrivals[(head + i) % queue.length];
+            }
+            queue = newQueue;
+            arrivals = newArrivals;
+            head = 0;
+        }
+
+        Stanza first() {
+            return queue[head];
+        }
+
+        long firstArrival() {
+            return arrivals[head];
+        }
+
+        Stanza removeFirst() {
+            Stanza stanza = queue[head];
+            queue[head] = null;
+            head = (head + 1) % queue.length;
+            size--;
+            return stanza;
+        }
+
+        /**
+         * @return the time that this file has moved past, so that no stanza earlier than it is expected
+         */
+        long watermark() {
+            if (finished) return Long.MAX_VALUE;
+            return tail == null ? NO_TIMESTAMP : tail.getLatestTime();
+        }
+
+        boolean isIdle() {
+            return size == 0;
+        }
+    }
+
+    LiveMerge(List<LogFile> logFiles, TimeWindow window, long latenessMillis) {
+        this.latenessNanos = TimeUnit.MILLISECONDS.toNanos(latenessMillis);
+        this.sinceNanos = window == null || window.since == null ? Long.MIN_VALUE : toEpochNanos(window.since);
+        this.untilNanos = window == null || window.until == null ? Long.MAX_VALUE : toEpochNanos(window.until);
+        List<Long> offsets = logFiles.stream()
+                .map(lf -> window == null || !lf.isPlainFile() ? 0L : window.startOffset(lf))
+                .collect(Collectors.toList());
+        this.inputs = new ArrayList<>();
+        for (int i = 0; i < logFiles.size(); i++) inputs.add(new Input(i, logFiles.get(i), offsets.get(i)));
+        this.watcher = watch(logFiles);
+    }
+
+    static Stream<Stanza> stream(List<LogFile> logFiles, TimeWindow window, long latenessMillis) {
+        LiveMerge merge = new LiveMerge(logFiles, window, latenessMillis);
+        return StreamSupport.stream(merge, false).onClose(merge::close);
+    }
+
+    private static WatchService watch(List<LogFile> logFiles) {
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            for (Path dir : logFiles.stream()
+                    .filter(LogFile::isPlainFile)
+                    .map(lf -> Paths.get(lf.filename).toAbsolutePath().getParent())
+                    .distinct()
+                    .collect(Collectors.toList())) {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            return watcher;
+        } catch (IOException | UnsupportedOperationException e) {
+            // polling will do
+            return null;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Stanza> action) {
+        while (true) {
+            long now = System.nanoTime();
+            Input next = null;
+            for (Input input : inputs) {
+                if (input.isIdle()) continue;
+                if (next == null || input.first().getEpochNanos() < next.first().getEpochNanos()) next = input;
+            }
+            if (next != null && isReady(next, now)) {
+                action.accept(next.removeFirst());
+                return true;
+            }
+            if (next == null && inputs.stream().allMatch(input -> input.finished)) return false;
+            boolean polled = false;
+            for (Input input : inputs) polled |= input.poll(now);
+            if (!polled) await(next, now);
+        }
+    }
+
+    /**
+     * A stanza is ready when every file with nothing waiting has moved past its time, or when it has waited long enough.
+     */
+    private boolean isReady(Input next, long now) {
+        if (now - next.firstArrival() >= latenessNanos) return true;
+        long time = next.first().getEpochNanos();
+        for (Input input : inputs) {
+            if (input == next || !input.isIdle()) continue;
+            long watermark = input.watermark();
+            // on a tie, the earlier file goes first, as in a merge of finished files
+            if (time > watermark || (time == watermark && input.index < next.index)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Wait for a file to change, or until a stanza or a quiet file will have waited long enough.
+     */
+    private void await(Input next, long now) {
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MILLIS);
+        if (next != null) deadline = Math.min(deadline, next.firstArrival() + latenessNanos);
+        for (Input input : inputs)
+            if (input.tail != null && input.tail.isReadingStanza()) deadline = Math.min(deadline, input.tail.getLastGrowth() + latenessNanos);
+        long timeout = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - now));
+        try {
+            if (watcher == null) {
+                Thread.sleep(timeout);
+                return;
+            }
+            for (WatchKey key = watcher.poll(timeout, TimeUnit.MILLISECONDS); key != null; key = watcher.poll()) {
+                key.pollEvents();
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return how many stanzas have been read but not handed on yet, from all the files
+     */
+    int queued() {
+        return inputs.stream().mapToInt(input -> input.size).sum();
+    }
+
+    @Override
+    public Spliterator<Stanza> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    @Override
+    public void close() {
+        inputs.forEach(input -> {
+            if (input.tail != null) input.tail.close();
+            if (input.finiteStream != null) input.finiteStream.close();
+        });
+        try {
+            if (watcher != null) watcher.close();
+        } catch (IOException ignored) {
+            // nothing more will be read anyway
+        }
+    }
+}
@@ -2,44 +2,71 @@ package io.openliberty.frankenlog;
 
 import picocli.CommandLine.ITypeConverter;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOError;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.ParsePosition;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class LogFile {
     static class Converter implements ITypeConverter<LogFile> {
         static final Map<String,LogFile> CACHE = new HashMap<>();
-        static final Pattern PATTERN = Pattern.compile("(.*):([YMD]{3})$");
+        static final Pattern PATTERN = Pattern.compile("(.*):([YMD]{3}|ISO)$");
         public LogFile convert(String arg) { return CACHE.computeIfAbsent(arg, this::create); }
 
         private LogFile create(String arg) {
             Matcher m = PATTERN.matcher(arg);
-            if (m.find()) {
-                String filename = m.group(1);
-                TimestampFormat t = TimestampFormat.valueOf(m.group(2));
-                return new LogFile(filename, t);
-            }
-            return new LogFile(arg);
+            boolean formatGiven = m.find();
+            String filename = formatGiven ? m.group(1) : arg;
+            TimestampFormat t = formatGiven ? TimestampFormat.valueOf(m.group(2)) : TimestampFormat.NONE;
+            return RotationSet.isGlob(filename) ? RotationSet.ofGlob(filename, t) : new LogFile(filename, t);
         }
     }
     enum TimestampFormat {
         DMY("'['dd/MM/yy H:mm:ss:SSS zzz']'", Locale.UK),
         MDY("'['MM/dd/yy H:mm:ss:SSS zzz']'", Locale.US),
         YMD("'['yy/MM/dd H:mm:ss:SSS zzz']'", Locale.PRC),
+        /** ISO-8601, as Liberty writes when <code>com.ibm.ws.logging.isoDateFormat</code> is set */
+        ISO("'['yyyy-MM-dd'T'HH:mm:ss.SSSZ']'", Locale.ROOT),
         NONE("'['dd/MM/yy H:mm:ss:SSS zzz']'", Locale.UK) {
             Instant parse(String timestamp) {
                 return guessTimeStamp(timestamp).parse(timestamp);
@@ -49,6 +76,7 @@ public class LogFile {
         static final Set<String> US_TIME_ZONES = Stream.of("AST", "EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "AST", "PDT", "AKST", "AKDT", "HST", "HAST", "HADT", "SST", "SDT", "CHST")
                 .collect(Collectors.toUnmodifiableSet());
         private final DateTimeFormatter formatter;
+        private final Map<String, Optional<ZoneId>> zones = new ConcurrentHashMap<>();
 
         TimestampFormat(String format, Locale locale) {
             this.formatter = DateTimeFormatter.ofPattern(format, locale);
@@ -60,7 +88,27 @@ public class LogFile {
             return zdTime.toInstant();
         }
 
+        /**
+         * Find out what zone the formatter would parse some zone text as.
+         * @return the zone, or null if the formatter does not recognise the text
+         */
+        ZoneId zoneFor(String zoneText) {
+            return zones.computeIfAbsent(zoneText, z -> {
+                try {
+                    var time = formatter.parse("[01/01/01 0:00:00:000 " + z + "]", new ParsePosition(0));
+                    return Optional.ofNullable(time.query(TemporalQueries.zoneId()));
+                } catch (DateTimeParseException e) {
+                    return Optional.empty();
+                }
+            }).orElse(null);
+        }
+
+        static boolean isIso(CharSequence timeStamp) {
+            return timeStamp.length() > 5 && timeStamp.charAt(5) == '-';
+        }
+
         static TimestampFormat guessTimeStamp(String timeStamp) {
+            if (isIso(timeStamp)) return TimestampFormat.ISO;
             boolean usDate = US_TIME_ZONES
                     .stream()
                     .anyMatch(timeStamp::contains);
@@ -69,35 +117,364 @@ public class LogFile {
                     : TimestampFormat.DMY;
         }
 
+        /**
+         * Work out which format some time stamps from a file are in.
+         * If more than one format parses them all, e.g. because no day is after the 12th, the time zones decide as {@link #guessTimeStamp(String)} does.
+         *
+         * @return the format that parses every time stamp,
+         * or {@link #NONE} if there are none, or if no one format parses them all, or if the time zones suggest different formats,
+         * so each has to be guessed at as it is read
+         */
+        static TimestampFormat detect(List<String> timeStamps) {
+            Map<TimestampFormat, TimestampParser> parsers = new EnumMap<>(TimestampFormat.class);
+            for (TimestampFormat format : values()) if (format != NONE) parsers.put(format, new TimestampParser(format));
+            // leave out anything that only looks like a time stamp, e.g. [err]
+            List<String> parsed = timeStamps.stream()
+                    .filter(ts -> parsers.values().stream().anyMatch(parser -> parser.parse(ts) != TimestampParser.NO_TIMESTAMP))
+                    .collect(Collectors.toList());
+            if (parsed.isEmpty()) return NONE;
+            List<TimestampFormat> candidates = parsers.entrySet().stream()
+                    .filter(e -> parsed.stream().allMatch(ts -> e.getValue().parse(ts) != TimestampParser.NO_TIMESTAMP))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            if (candidates.size() < 2) return candidates.isEmpty() ? NONE : candidates.get(0);
+            Set<TimestampFormat> guesses = parsed.stream().map(TimestampFormat::guessTimeStamp).collect(Collectors.toSet());
+            if (guesses.size() > 1) return NONE;
+            TimestampFormat guess = guesses.iterator().next();
+            return candidates.contains(guess) ? guess : candidates.get(0);
+        }
     }
+    static boolean useMappedReader;
+    /** The filename that means the standard input */
+    static final String STDIN = "-";
+    /** Separates an archive from the name of an entry inside it, e.g. <code>dump.zip!logs/messages.log</code> */
+    static final String ENTRY_SEPARATOR = "!";
+    private static final Pattern ARCHIVE_ENTRY = Pattern.compile("(.*\\.zip)" + ENTRY_SEPARATOR + "/?(.+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ARCHIVED_LOG = Pattern.compile(".*\\.log(\\.gz)?", Pattern.CASE_INSENSITIVE);
     private static final AtomicInteger NEXT_CHAR = new AtomicInteger('A');
     final String filename;
 
-    final String shortname = String.format("%c%1$c", NEXT_CHAR.getAndIncrement());
+    /** The position of this file amongst all the files, which decides the order of stanzas with the same time */
+    final int ordinal;
+
+    final String shortname;
 
-    final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("'['yy/MM/dd H:mm:ss:SSS '" + shortname + "] '").withZone(ZoneOffset.UTC);
+    final DateTimeFormatter formatter;
 
+    /** The format given with the filename, or {@link TimestampFormat#NONE} if it is to be detected */
     final TimestampFormat format;
+    private volatile TimestampFormat detectedFormat;
+    private volatile Boolean json;
+
+    /** How many bytes to look at in each place that time stamps are sampled from */
+    static final int SAMPLE_SIZE = 32 << 10;
+    /** How many places to sample time stamps from, spread evenly through a plain file */
+    static final int SAMPLE_PLACES = 5;
+
+    /** How much of a plain file to map at once when decoding stanzas on demand */
+    static final long REGION_SIZE = 1 << 30;
+    /** How far each region reaches into the next, so that a stanza that crosses a boundary is usually still inside one region */
+    static final int REGION_OVERLAP = 1 << 20;
+    private final Map<Long, MappedByteBuffer> regions = new ConcurrentHashMap<>();
 
     LogFile(String filename, TimestampFormat tsf) {
+        this(filename, tsf, NEXT_CHAR.getAndIncrement() - 'A');
+    }
+
+    /**
+     * A file of a {@link RotationSet}, which goes by the set's name.
+     */
+    LogFile(String filename, TimestampFormat tsf, LogFile set) {
+        this(filename, tsf, set.ordinal);
+    }
+
+    /**
+     * A log whose position amongst the logs is already known, so it takes no new name.
+     */
+    LogFile(String filename, TimestampFormat tsf, int ordinal) {
         this.filename = filename;
         this.format = tsf;
+        this.ordinal = ordinal;
+        this.shortname = String.format("%c%1$c", 'A' + ordinal);
+        this.formatter = DateTimeFormatter.ofPattern("'['yy/MM/dd H:mm:ss:SSS '" + shortname + "] '").withZone(ZoneOffset.UTC);
     }
 
     LogFile(String filename) {
         this(filename, TimestampFormat.NONE);
     }
 
+    /**
+     * Replace each zip archive with the logs inside it, so they can all be read at once without extracting them,
+     * and each directory with the logs in it, each log together with its rotated files as one {@link RotationSet}.
+     * The logs are then named in order, so no name is taken by an archive or a directory that is not read itself.
+     */
+    static List<LogFile> expand(List<LogFile> logFiles) {
+        List<LogFile> expanded = new ArrayList<>();
+        for (LogFile lf : logFiles) {
+            if (lf.isPlainFile() && Files.isDirectory(Paths.get(lf.filename))) {
+                expanded.addAll(RotationSet.inDirectory(Paths.get(lf.filename), lf.format));
+                continue;
+            }
+            if (!lf.isPlainFile() || !lf.filename.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                expanded.add(lf);
+                continue;
+            }
+            try (ZipFile zip = new ZipFile(lf.filename)) {
+                zip.stream()
+                        .filter(entry -> !entry.isDirectory() && ARCHIVED_LOG.matcher(entry.getName()).matches())
+                        .map(entry -> new LogFile(lf.filename + ENTRY_SEPARATOR + entry.getName(), lf.format))
+                        .forEach(expanded::add);
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+        }
+        for (int i = 0; i < expanded.size(); i++) {
+            if (expanded.get(i).ordinal != i) expanded.set(i, expanded.get(i).numbered(i));
+        }
+        return expanded;
+    }
+
+    /**
+     * @return this log under the name for another position amongst the logs
+     */
+    LogFile numbered(int ordinal) {
+        return new LogFile(filename, format, ordinal);
+    }
+
+    /**
+     * @return the files that make up this log, which is just this file unless it is a {@link RotationSet}
+     */
+    List<LogFile> members() {
+        return List.of(this);
+    }
+
+    /**
+     * A plain file can be mapped, sought in, and indexed.
+     * Otherwise it is the standard input, a compressed file, or an entry in an archive, and can only be read through once.
+     */
+    boolean isPlainFile() {
+        return !STDIN.equals(filename) && !isGzipped(filename) && !ARCHIVE_ENTRY.matcher(filename).matches();
+    }
+
+    /**
+     * @return the format of the time stamps in this file, detected from a sample of them the first time if it was not given
+     */
+    TimestampFormat getFormat() {
+        if (format != TimestampFormat.NONE || STDIN.equals(filename)) return format;
+        TimestampFormat detected = detectedFormat;
+        if (detected == null) {
+            synchronized (this) {
+                if (detectedFormat == null) detectedFormat = TimestampFormat.detect(sampleTimeStamps());
+                detected = detectedFormat;
+            }
+        }
+        return detected;
+    }
+
+    /**
+     * A JSON log, as Liberty writes when <code>com.ibm.ws.logging.message.format</code> is <code>json</code>,
+     * has a JSON object on each line rather than a time stamp at the start of each stanza,
+     * so it cannot be mapped, indexed or sought in by its bytes.
+     * The standard input is never taken to be one, since it cannot be sampled,
+     * but its JSON lines are read as stanzas all the same.
+     *
+     * @return whether most of the stanzas sampled from this file are JSON lines
+     */
+    boolean isJson() {
+        if (STDIN.equals(filename)) return false;
+        Boolean isJson = json;
+        if (isJson == null) {
+            synchronized (this) {
+                if (json == null) {
+                    List<String> lines = sampleLines();
+                    long jsonLines = lines.stream().filter(JsonLine::isStanza).count();
+                    json = jsonLines > 0 && jsonLines >= lines.stream().filter(line -> line.startsWith("[")).count();
+                }
+                isJson = json;
+            }
+        }
+        return isJson;
+    }
+
+    /**
+     * Find some of the time stamps in this file, as {@link #sampleLines()} does.
+     */
+    List<String> sampleTimeStamps() {
+        List<String> timeStamps = new ArrayList<>();
+        for (String line : sampleLines()) {
+            if (!line.startsWith("[")) continue;
+            String timeStamp = LogReader.getTimeStamp(line);
+            if (!timeStamp.isEmpty()) timeStamps.add(timeStamp);
+        }
+        return timeStamps;
+    }
+
+    /**
+     * Read some of the lines in this file: from the start and from places spread through the rest of a plain file,
+     * or just from the start of anything else.
+     * The standard input cannot be read twice, so whatever is sampled from it is lost.
+     */
+    List<String> sampleLines() {
+        List<String> lines = new ArrayList<>();
+        try {
+            if (!isPlainFile()) {
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(openStream(), Charset.defaultCharset()))) {
+                    char[] chars = new char[SAMPLE_SIZE];
+                    int n = 0;
+                    for (int read; n < chars.length && (read = in.read(chars, n, chars.length - n)) > 0; n += read);
+                    addLines(new String(chars, 0, n), false, n == chars.length, lines);
+                }
+                return lines;
+            }
+            try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+                long size = channel.size();
+                long previous = -1;
+                for (int i = 0; i < SAMPLE_PLACES; i++) {
+                    long offset = Math.max(0, size * i / (SAMPLE_PLACES - 1) - (i == 0 ? 0 : SAMPLE_SIZE));
+                    if (offset <= previous) continue;
+                    ByteBuffer bytes = ByteBuffer.allocate((int) Math.min(SAMPLE_SIZE, size - offset));
+                    while (bytes.hasRemaining() && channel.read(bytes, offset + bytes.position()) >= 0);
+                    bytes.flip();
+                    addLines(Charset.defaultCharset().decode(bytes).toString(), offset > 0, offset + bytes.limit() < size, lines);
+                    previous = offset;
+                }
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * @param partialStart whether the text starts part of the way through a line, so the first line is to be ignored
+     * @param partialEnd   whether the text ends part of the way through a line, so the last line is to be ignored
+     */
+    private static void addLines(String text, boolean partialStart, boolean partialEnd, List<String> lines) {
+        String[] split = text.split("\r?\n", -1);
+        for (int i = partialStart ? 1 : 0; i < split.length - (partialEnd ? 1 : 0); i++) lines.add(split[i]);
+    }
+
+    private static boolean isGzipped(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+
     Stream<Stanza> stream() {
-        return new LogReader(this).getStanzas();
+        if (useMappedReader && MappedLogReader.supports(this)) {
+            LogRangeSpliterator stanzas = new LogRangeSpliterator(this);
+            return StreamSupport.stream(stanzas, false).onClose(stanzas::close);
+        }
+        return openReader().getStanzas();
+    }
+
+    /**
+     * Read the stanzas from an offset that is known to be the start of a stanza.
+     */
+    Stream<Stanza> stream(long offset) {
+        if (offset == 0) return stream();
+        if (useMappedReader && MappedLogReader.supports(this)) {
+            LogRangeSpliterator stanzas = new LogRangeSpliterator(this, offset);
+            return StreamSupport.stream(stanzas, false).onClose(stanzas::close);
+        }
+        return new LogReader(this, new BufferedReader(getReader(offset))).getStanzas();
+    }
+
+    /**
+     * Decode part of a plain file, as a {@link CompactStanza} does whenever its text is asked for.
+     */
+    String decode(long offset, int length) {
+        ByteBuffer bytes = bytes(offset, length);
+        if (bytes == null) {
+            // the stanza reaches beyond the region, or beyond the end of the file when the region was mapped
+            bytes = ByteBuffer.allocate(length);
+            try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+                while (bytes.hasRemaining() && channel.read(bytes, offset + bytes.position()) >= 0);
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+            bytes.flip();
+        }
+        return Charset.defaultCharset().decode(bytes).toString();
+    }
+
+    /**
+     * Look at part of a plain file in memory.
+     * The file is mapped a region at a time, and each region is kept for next time.
+     *
+     * @return the bytes, or null if they are not all inside one mapped region
+     */
+    ByteBuffer bytes(long offset, int length) {
+        long index = offset / REGION_SIZE;
+        MappedByteBuffer region = regions.computeIfAbsent(index, this::mapRegion);
+        long regionStart = index * REGION_SIZE;
+        if (offset + length > regionStart + region.limit()) return null;
+        return region.duplicate().position((int) (offset - regionStart)).limit((int) (offset + length - regionStart));
+    }
+
+    private MappedByteBuffer mapRegion(long index) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long start = index * REGION_SIZE;
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, Math.min(REGION_SIZE + REGION_OVERLAP, channel.size() - start)));
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    LogReader openReader() {
+        return useMappedReader && MappedLogReader.supports(this) ? new MappedLogReader(this) : new LogReader(this);
+    }
+
+    Reader getReader(long offset) {
+        try {
+            FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+            channel.position(offset);
+            if (Stats.enabled) return new InputStreamReader(Stats.counting(this, Channels.newInputStream(channel)), Charset.defaultCharset());
+            return Channels.newReader(channel, Charset.defaultCharset());
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
     }
 
     Reader getReader() {
+        if (!isPlainFile()) {
+            InputStream in = Stats.enabled ? Stats.counting(this, openStream()) : openStream();
+            return new InputStreamReader(new BackgroundInputStream(filename, in), Charset.defaultCharset());
+        }
         try {
+            if (Stats.enabled) return new InputStreamReader(Stats.counting(this, new FileInputStream(filename)), Charset.defaultCharset());
             return new FileReader(filename);
         } catch (FileNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private InputStream openStream() {
+        // the standard input is not ours to close
+        if (STDIN.equals(filename)) return new FilterInputStream(System.in) {
+            @Override
+            public void close() {}
+        };
+        try {
+            Matcher m = ARCHIVE_ENTRY.matcher(filename);
+            if (!m.matches()) return new GZIPInputStream(new FileInputStream(filename), BackgroundInputStream.CHUNK_SIZE);
+            ZipFile zip = new ZipFile(m.group(1));
+            ZipEntry entry = zip.getEntry(m.group(2));
+            if (entry == null) {
+                zip.close();
+                throw new FileNotFoundException(m.group(2) + " in " + m.group(1));
+            }
+            InputStream in = new FilterInputStream(zip.getInputStream(entry)) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+            return isGzipped(entry.getName()) ? new GZIPInputStream(in, BackgroundInputStream.CHUNK_SIZE) : in;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
 }
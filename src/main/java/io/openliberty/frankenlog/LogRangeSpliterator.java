@@ -0,0 +1,178 @@
+package io.openliberty.frankenlog;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the stanzas of a plain log file that cuts the file into byte ranges.
+ * Each cut is moved forward to the next line that starts with a time stamp,
+ * so every range can be parsed by its own {@link MappedLogReader}
+ * and still produce exactly the stanzas that reading the whole file would.
+ * <p>
+ * When traversed sequentially, the next few ranges are parsed ahead on the common ForkJoin pool,
+ * and their stanzas are handed back in file order.
+ * The files being read at once share the bytes that may be parsed ahead, so merging many files does not take
+ * many times the memory: each file's ranges get smaller instead.
+ * In a parallel stream, {@link #trySplit()} hands out the ranges themselves.
+ */
+class LogRangeSpliterator implements Spliterator<Stanza>, AutoCloseable {
+    static final long DEFAULT_RANGE_SIZE = 16 << 20;
+    /** The smallest range worth handing to a parser of its own, unless a smaller range size is asked for */
+    static final long MIN_RANGE_SIZE = 1 << 20;
+    private static final int RESYNC_WINDOW_SIZE = 64 << 10;
+    /** How many bytes may be parsed ahead across all the files being read at once */
+    private static final long READ_AHEAD_BUDGET = DEFAULT_RANGE_SIZE * (ForkJoinPool.getCommonPoolParallelism() + 1);
+    private static final AtomicInteger reading = new AtomicInteger();
+
+    private final LogFile logFile;
+    private final long rangeSize;
+    private final int readAhead;
+    private final long end;
+    /** The start of the part of the file that has not been handed to a parser yet */
+    private long start;
+    private final Deque<ForkJoinTask<List<Stanza>>> parsing = new ArrayDeque<>();
+    private Iterator<Stanza> current = Collections.emptyIterator();
+    /** Whether this is counted amongst the files being read */
+    private boolean isReading;
+    /** What every range's reader reads, recorded as one stream of the file, and shared with the ranges split off */
+    private final Events.FileStream recording;
+    /** Whether this is the spliterator the stream was made from, which ends the recording */
+    private final boolean ownsRecording;
+
+    LogRangeSpliterator(LogFile lf) {
+        this(lf, 0);
+    }
+
+    LogRangeSpliterator(LogFile lf, long start) {
+        this(lf, start, -1, DEFAULT_RANGE_SIZE, ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    /**
+     * @param end the end of the part of the file to read, or -1 for the end of the file
+     */
+    LogRangeSpliterator(LogFile lf, long start, long end, long rangeSize, int readAhead) {
+        this(lf, start, end, rangeSize, readAhead, new Events.FileStream(lf, MappedLogReader.class.getSimpleName()), true);
+    }
+
+    private LogRangeSpliterator(LogFile lf, long start, long end, long rangeSize, int readAhead, Events.FileStream recording, boolean ownsRecording) {
+        this.logFile = lf;
+        this.recording = recording;
+        this.ownsRecording = ownsRecording;
+        this.start = start;
+        this.rangeSize = rangeSize;
+        this.readAhead = readAhead;
+        try {
+            this.end = end < 0 ? Files.size(Paths.get(lf.filename)) : end;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Stanza> action) {
+        while (!current.hasNext()) {
+            readAhead();
+            if (parsing.isEmpty()) {
+                stopReading();
+                return false;
+            }
+            current = parsing.removeFirst().join().iterator();
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+    /**
+     * Keep enough ranges being parsed to occupy the pool.
+     */
+    private void readAhead() {
+        if (!isReading && start < end) {
+            isReading = true;
+            reading.incrementAndGet();
+        }
+        long size = Math.max(READ_AHEAD_BUDGET / readAhead / Math.max(1, reading.get()), Math.min(rangeSize, MIN_RANGE_SIZE));
+        while (parsing.size() < readAhead && start < end) {
+            final long from = start, to = cutAfter(start + Math.min(rangeSize, size));
+            parsing.addLast(ForkJoinPool.commonPool().submit(() -> parse(from, to)));
+            start = to;
+        }
+    }
+
+    private List<Stanza> parse(long from, long to) {
+        Events.ChunkParsed event = new Events.ChunkParsed();
+        event.begin();
+        List<Stanza> stanzas = new ArrayList<>();
+        try (MappedLogReader reader = new MappedLogReader(logFile, MappedLogReader.DEFAULT_WINDOW_SIZE, from, to)) {
+            reader.recordingTo(recording);
+            for (Stanza stanza = reader.next(); stanza != null; stanza = reader.next()) stanzas.add(stanza);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = logFile.filename;
+            event.offset = from;
+            event.bytes = to - from;
+            event.stanzas = stanzas.size();
+            event.commit();
+        }
+        return stanzas;
+    }
+
+    /**
+     * @return the start of the first stanza at or after the specified position, or the end of the range
+     */
+    private long cutAfter(long position) {
+        if (position >= end) return end;
+        try (MappedLogReader reader = new MappedLogReader(logFile, RESYNC_WINDOW_SIZE, 0, end)) {
+            return reader.nextStanzaStart(position);
+        }
+    }
+
+    @Override
+    public Spliterator<Stanza> trySplit() {
+        // only split before anything has been read, and never into ranges smaller than a single read-ahead range
+        if (current.hasNext() || !parsing.isEmpty() || end - start < 2 * rangeSize) return null;
+        long cut = cutAfter(start + (end - start) / 2);
+        if (cut >= end) return null;
+        Spliterator<Stanza> prefix = new LogRangeSpliterator(logFile, start, cut, rangeSize, readAhead, recording, false);
+        start = cut;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        // the number of bytes is a fair upper bound on the number of stanzas
+        return end - start;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    private void stopReading() {
+        if (isReading) reading.decrementAndGet();
+        isReading = false;
+        if (ownsRecording) recording.close();
+    }
+
+    @Override
+    public void close() {
+        stopReading();
+        parsing.forEach(task -> task.cancel(false));
+        parsing.clear();
+        current = Collections.emptyIterator();
+    }
+}
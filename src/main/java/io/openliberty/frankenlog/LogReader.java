@@ -16,24 +16,62 @@ package io.openliberty.frankenlog;
 import java.io.BufferedReader;
 import java.io.IOError;
 import java.io.IOException;
-import java.time.Instant;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
 
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+
 class LogReader implements AutoCloseable {
 
     private final BufferedReader in;
     private final List<String> lines = new ArrayList<>();
     final LogFile logFile;
-    private Instant previousTime = Instant.MIN;
+    final TimestampParser parser;
+    private long previousTime = NO_TIMESTAMP;
     private String previousUnformattedTime = "";
+    /** For the lines of a JSON log, created when the first one is seen */
+    private JsonLine json;
+    private TimestampParser isoParser;
+    /** What has been read, counted here and added up at the end of the file or when the reader is closed */
+    long linesRead, stanzasRead, continuationLines, parseFailures;
+    /** For choosing which operations to time */
+    int ticks;
+    /** Where what is read is recorded, if this reader reads a stream of the file rather than part of it for another */
+    private Events.FileStream recording;
+    /** Whether the recording ends when this reader finishes, rather than being shared by the readers of a stream */
+    private boolean ownsRecording;
+    private boolean finished;
 
     LogReader(LogFile lf) {
+        this(lf, new BufferedReader(lf.getReader()));
+    }
+
+    /**
+     * For subclasses that read the file by some other means than a character stream.
+     */
+    LogReader(LogFile lf, BufferedReader in) {
         this.logFile = lf;
-        this.in = new BufferedReader(lf.getReader());
+        this.parser = new TimestampParser(lf.getFormat());
+        this.in = in;
+    }
+
+    /**
+     * Record this reader's stream of the file, from now until the reader finishes.
+     */
+    LogReader recorded() {
+        recording = new Events.FileStream(logFile, getClass().getSimpleName());
+        ownsRecording = true;
+        return this;
+    }
+
+    /**
+     * Record what this reader reads as part of a stream of the file that other readers read too.
+     */
+    LogReader recordingTo(Events.FileStream recording) {
+        this.recording = recording;
+        return this;
     }
 
     static String getTimeStamp(String text) {
@@ -48,41 +86,134 @@ class LogReader implements AutoCloseable {
             String nextLine;
 
             // concatenate lines until the nextLine timestamp or the end of the stream
-            while (null != (nextLine = in.readLine())) {
-                try {
-                    String timeStamp = getTimeStamp(nextLine);
-                    Instant time = logFile.format.parse(timeStamp);
-                    //If we get to here there was a time stamp and it is not the preamble or a continuation line
-                    nextLine = nextLine.substring(timeStamp.length() + 1);
-                    try {
-                        if (!lines.isEmpty()) return createStanza();
-                    } finally {
-                        this.previousTime = time;
-                        this.previousUnformattedTime = timeStamp;
-                    }
-                } catch (DateTimeParseException ignored) {
-                    // there was no timestamp, so this is a continuation line
-                } finally {
-                    lines.add(nextLine);
-                }
+            for (;;) {
+                long start = Stats.start(++ticks);
+                nextLine = in.readLine();
+                start = Stats.stop(Stats.Phase.READING, start);
+                if (nextLine == null) break;
+                Stanza stanza = add(nextLine);
+                Stats.stop(Stats.Phase.PARSING, start);
+                if (stanza != null) return stanza;
             }
             // at the end of the file - return a Stanza iff there is some content
-            return lines.isEmpty() ? null : createStanza();
+            Stanza last = flush();
+            finish();
+            return last;
         } catch (IOException e) {
             throw new IOError(e);
         }
     }
 
+    /**
+     * Add the next line to the stanza being read.
+     *
+     * @return the previous stanza, if the line starts a new one
+     */
+    Stanza add(String nextLine) {
+        linesRead++;
+        long time = nextLine.startsWith("{") ? parseJson(nextLine) : NO_TIMESTAMP;
+        if (time != NO_TIMESTAMP) return start(time, json.getTimeStamp(), json.getText());
+        int timeStampEnd = nextLine.indexOf("] ") + 1;
+        time = timeStampEnd == 0 ? NO_TIMESTAMP : parser.parse(nextLine, 0, timeStampEnd);
+        if (time == NO_TIMESTAMP) {
+            // there was no timestamp, so this is a continuation line
+            if (timeStampEnd > 0 && nextLine.startsWith("[")) parseFailures++;
+            continuationLines++;
+            lines.add(nextLine);
+            return null;
+        }
+        //If we get to here there was a time stamp and it is not the preamble or a continuation line
+        return start(time, nextLine.substring(0, timeStampEnd), nextLine.substring(timeStampEnd + 1));
+    }
+
+    /**
+     * A line of a JSON log starts a stanza of its own, whose text is laid out as it would be in a text log.
+     * A line that only looks like JSON, e.g. a payload in a trace, is read as any other line.
+     *
+     * @return the time of the line, or {@link TimestampParser#NO_TIMESTAMP} if it is not a line of a JSON log
+     */
+    private long parseJson(String nextLine) {
+        if (json == null) {
+            json = new JsonLine();
+            isoParser = new TimestampParser(LogFile.TimestampFormat.ISO);
+        }
+        return json.parse(nextLine) ? isoParser.parse(json.getTimeStamp()) : NO_TIMESTAMP;
+    }
+
+    private Stanza start(long time, String timeStamp, String nextLine) {
+        try {
+            return lines.isEmpty() ? null : createStanza();
+        } finally {
+            this.previousTime = time;
+            this.previousUnformattedTime = timeStamp;
+            lines.add(nextLine);
+        }
+    }
+
+    /**
+     * @return the stanza being read, as it is so far, or null if there is none
+     */
+    Stanza flush() {
+        return lines.isEmpty() ? null : createStanza();
+    }
+
+    /**
+     * @return whether some lines have been read that have not been handed on in a stanza yet
+     */
+    boolean isReadingStanza() {
+        return !lines.isEmpty();
+    }
+
+    /**
+     * @return the time of the latest time stamp read, or {@link TimestampParser#NO_TIMESTAMP} if there has been none
+     */
+    long getLatestTime() {
+        return previousTime;
+    }
+
     private Stanza createStanza() {
+        stanzasRead++;
         try {
-            return new Stanza(this, lines, this.previousTime, this.previousUnformattedTime);
+            return new Stanza(logFile, lines, this.previousTime, this.previousUnformattedTime);
         } finally {
             lines.clear();
         }
     }
 
+    /**
+     * Add what this reader has read to the {@link Stats}, if they are being kept, and to the recording of its stream, if any.
+     *
+     * @param bytes how many bytes were read, if the stream was not counting them
+     */
+    void addStats(long bytes) {
+        if (linesRead == 0 && bytes == 0) return;
+        if (Stats.enabled) {
+            Stats.FileCounts counts = Stats.of(logFile);
+            counts.bytes.add(bytes);
+            counts.lines.add(linesRead);
+            counts.stanzas.add(stanzasRead);
+            counts.continuationLines.add(continuationLines);
+            counts.parseFailures.add(parseFailures);
+        }
+        if (recording != null) recording.add(bytes, linesRead, stanzasRead);
+        linesRead = stanzasRead = continuationLines = parseFailures = 0;
+    }
+
+    /**
+     * Record that the reader has finished with the file, with everything read from it,
+     * at the end of the file or when it is closed, whichever is first.
+     * A stream that is merged may never be closed.
+     */
+    void finish() {
+        addStats(0);
+        if (finished) return;
+        finished = true;
+        if (ownsRecording) recording.close();
+    }
+
     @Override
     public void close() {
+        finish();
         lines.clear();
         try {
             in.close();
@@ -92,6 +223,7 @@ class LogReader implements AutoCloseable {
     }
 
     Stream<Stanza> getStanzas() {
+        recorded();
         return Stream.generate(this::next).takeWhile(Objects::nonNull).onClose(this::close);
     }
 }
@@ -1,18 +1,28 @@
 package io.openliberty.frankenlog;
 
 import picocli.CommandLine;
+import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.HelpCommand;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.PropertiesDefaultProvider;
+import picocli.CommandLine.Spec;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static io.openliberty.frankenlog.MergeUtil.merge;
+import static io.openliberty.frankenlog.MergeUtil.mergeReadingAhead;
 
 @Command(
         name = "lol",
@@ -22,46 +32,158 @@ import static io.openliberty.frankenlog.MergeUtil.merge;
         subcommands = {HelpCommand.class, GrepCommand.class}, // other subcommands are annotated methods
         defaultValueProvider = PropertiesDefaultProvider.class)
 public class Lol {
+    static final int READ_AHEAD_BATCH_SIZE = 1024;
+
+    @Spec
+    private CommandSpec spec;
+
     public static void main(String... args) {
         Lol lol = new Lol();
-        CommandLine commandLine = new CommandLine(lol);
+        CommandLine commandLine = new CommandLine(lol).setCaseInsensitiveEnumValuesAllowed(true);
         int exitCode = commandLine.execute(args);
         System.exit(exitCode);
     }
 
+    @Option(names = "--mmap", description = "Read plain log files through memory-mapped windows instead of a character stream, parsing large files in parallel")
+    void setMapped(boolean mapped) {
+        LogFile.useMappedReader = mapped;
+    }
+
+    @Option(names = "--output", paramLabel = "mode", description = "How to print the output: ${COMPLETION-CANDIDATES}. Plain has no highlighting, and raw keeps the stanzas' own time stamps. The default is ansi")
+    void setOutputMode(OutputSink.Mode mode) {
+        OutputSink.mode = mode;
+    }
+
+    @Option(names = "--stats", description = "At the end, print to the standard error what was read from each file, how fast, where the time went and how high the heap got at most")
+    void setStats(boolean stats) {
+        if (!stats || Stats.enabled) return;
+        Stats.enable();
+        // print them even when following is interrupted
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> Stats.print(System.err)));
+    }
+
     @Command(name = "gather", description = "Unify and output concurrent logs")
     void gather(
+            @Option(names = "--read-ahead", paramLabel = "batches", defaultValue = "4", description = "The number of batches of stanzas to parse ahead of the merge for each file, or 0 to parse everything on the merging thread")
+            int readAhead,
+            @Option(names = "--max-open-files", paramLabel = "files", defaultValue = "512", description = "The most files to have open at once, at least 3. With more log files than this, they are merged a group at a time into temporary sorted runs, which are then merged")
+            int maxOpenFiles,
+            @Option(names = "--run-buffer", paramLabel = "KB", defaultValue = "64", description = "The size of the buffer for reading or writing each temporary sorted run")
+            int runBufferKB,
+            @Option(names = "--reorder-window", paramLabel = "ms|count", converter = ReorderWindow.Converter.class, description = "Put each file's stanzas back in time order as they are read, when they are out of order by up to this many milliseconds, e.g. 250ms, or this many stanzas, e.g. 100. Not used with --follow")
+            ReorderWindow reorderWindow,
+            @Option(names = "--dedup", description = "Leave out any stanza with the same time and text as one already printed, e.g. where rotated logs overlap or a log was collected twice")
+            boolean dedup,
+            @Mixin
+            TimeWindow window,
+            @Mixin
+            FollowOptions follow,
             @Parameters(
                     paramLabel = "logReaders",
                     arity = "1..*",
                     converter = LogFile.Converter.class,
-                    description = "The paths to the files you would like to merge"
+                    description = "The paths to the files you would like to merge: a .gz file, a .zip archive or an entry in one (archive.zip!entry), - for the standard input, a directory of logs, or a glob in quotes for a log and the files it was rotated into, e.g. 'logs/trace*.log'"
             )
             List<LogFile> logFiles) {
-        logFiles.forEach(file -> System.out.println(file.shortname + " = " + file.filename));
-        merge(logFiles.stream().map(LogReader::new).map(LogReader::getStanzas))
-                .map(Stanza::getDisplayText)
-                .forEach(System.out::println);
+        if (maxOpenFiles < SortedRuns.MIN_OPEN_FILES)
+            throw new ParameterException(spec.commandLine().getSubcommands().get("gather"), "--max-open-files must be at least " + SortedRuns.MIN_OPEN_FILES + ", not " + maxOpenFiles);
+        if (runBufferKB < 1)
+            throw new ParameterException(spec.commandLine().getSubcommands().get("gather"), "--run-buffer must be at least 1, not " + runBufferKB);
+        logFiles = LogFile.expand(logFiles);
+        try (OutputSink out = OutputSink.toStandardOutput()) {
+            logFiles.forEach(file -> out.println(file.shortname + " = " + file.filename));
+            if (follow.follow) {
+                try (Stream<Stanza> stanzas = LiveMerge.stream(logFiles, window, follow.latenessMillis)) {
+                    // print each stanza as soon as it is merged
+                    (dedup ? stanzas.filter(new Dedup()::isFirst) : stanzas).forEach(stanza -> {
+                        out.printStanza(stanza);
+                        out.flush();
+                    });
+                }
+                return;
+            }
+            try (Stream<Stanza> stanzas = SortedRuns.merge(logFiles, maxOpenFiles, runBufferKB << 10, files -> mergeAtOnce(files, window, reorderWindow, readAhead))) {
+                (dedup ? stanzas.filter(new Dedup()::isFirst) : stanzas).forEach(out::printStanza);
+            }
+        }
+    }
+
+    /**
+     * Merge log files as they are read, all of them open at once.
+     * Each file is put back in order first, if there is a reorder window, on the thread that reads ahead from it.
+     *
+     * @return the merged stanzas, which close the files when closed
+     */
+    private static Stream<Stanza> mergeAtOnce(List<LogFile> logFiles, TimeWindow window, ReorderWindow reorderWindow, int readAhead) {
+        // position every file in the window before merging, so no file waits for another to be searched
+        List<Stream<Stanza>> inputs = TimeWindow.streams(logFiles, window).stream()
+                .map(stanzas -> ReorderWindow.reorder(stanzas, reorderWindow))
+                .collect(Collectors.toList());
+        Stream<Stanza> merged = readAhead > 0 && logFiles.size() > 1
+                ? mergeReadingAhead(inputs.stream(), Stanza::getEpochNanos, READ_AHEAD_BATCH_SIZE, readAhead)
+                : merge(inputs.stream(), Stanza::getEpochNanos);
+        return merged.onClose(() -> inputs.forEach(Stream::close));
+    }
+
+    static class GapMode {
+        @Option(names = {"-t", "--time-gap"}, paramLabel = "seconds", description = "The minimum seconds gap between two lines for them to be displayed")
+        Long timeGap;
+        @Option(names = "--top", paramLabel = "K", description = "Display the K lines with the biggest time gaps, biggest first")
+        Integer top;
+        @Option(names = "--histogram", description = "Display how the time gaps are distributed, with percentiles, across all the log files together")
+        boolean histogram;
     }
 
     @Command(name = "gap", description = "Find the lines in you log with a time gap bigger than your inputted time (-t). If no time is entered then the lines with the biggest time gap will be returned")
     void gap(
-            @Option(names = {"-t", "--time-gap"}, defaultValue = "-1", description = "The minimum seconds gap between two lines for them to be displayed")
-            long timeGap,
+            @ArgGroup
+            GapMode mode,
+            @Mixin
+            TimeWindow window,
             @Parameters(
                     paramLabel = "log file",
-                    arity = "1",
+                    arity = "1..*",
                     converter = LogFile.Converter.class,
-                    description = "The log file and the minimum time gap. If no time gap is provided then the lines with the biggest time gap will be returned"
+                    description = "The log files to look for time gaps in, each on its own unless there is a --histogram"
             )
-            LogFile lf) {
-        if (timeGap == -1) {
-            largestTimeGap(lf);
-        } else {
-            minimumTimeGap(lf, Duration.ofSeconds(timeGap));
+            List<LogFile> logFiles) {
+        if (mode != null && mode.top != null && mode.top < 1)
+            throw new ParameterException(spec.commandLine().getSubcommands().get("gap"), "--top must be at least 1, not " + mode.top);
+        logFiles = LogFile.expand(logFiles);
+        try (OutputSink out = OutputSink.toStandardOutput()) {
+            if (mode != null && mode.histogram) {
+                gapHistogram(logFiles, window).print(out);
+                return;
+            }
+            for (LogFile lf : logFiles) {
+                if (logFiles.size() > 1) out.println("==> " + lf.filename + " <==");
+                try (Stream<Stanza> stanzas = TimeWindow.stream(lf, window)) {
+                    if (mode == null || mode.timeGap != null && mode.timeGap < 0) {
+                        largestTimeGap(stanzas, out);
+                    } else if (mode.top != null) {
+                        topTimeGaps(stanzas, mode.top, out);
+                    } else {
+                        minimumTimeGap(stanzas, Duration.ofSeconds(mode.timeGap), out);
+                    }
+                }
+            }
         }
     }
 
+    @Command(name = "index", description = "Build or bring up to date the time index of each log file, so --since can go straight to the right place even when the log is not in time order")
+    void index(
+            @Parameters(
+                    paramLabel = "files",
+                    arity = "1..*",
+                    converter = LogFile.Converter.class,
+                    description = "The paths to the files you would like to index"
+            )
+            List<LogFile> files) {
+        LogFile.expand(files).stream().flatMap(lf -> lf.members().stream()).forEach(lf -> System.out.println(TimeIndex.supports(lf) ?
+                TimeIndex.sidecar(lf) + " -> " + TimeIndex.forFile(lf).size() + " entries" :
+                lf.filename + " -> Cannot be indexed"));
+    }
+
     @Command(name = "grok", description = "Guess the inputted log's date format")
     void grok(
             @Parameters(
@@ -71,59 +193,123 @@ public class Lol {
                     description = "The paths to the files you would like to guess the date format for"
             )
             List<LogFile> files) {
-        files.forEach(this::grok);
+        LogFile.expand(files).stream().flatMap(lf -> lf.members().stream()).forEach(this::grok);
     }
 
     private void grok(LogFile lf) {
-        Stanza stanza = new LogReader(lf).getStanzas().filter(e -> !e.isPreamble()).findAny().orElse(null);
-        System.out.println(stanza != null ?
-                lf.filename + " -> " + LogFile.TimestampFormat.guessTimeStamp(stanza.getUnformattedTime()) :
-                lf.filename + " -> No Timestamps found");
-    }
-
-    private void largestTimeGap(LogFile lf) {
-        AtomicInteger ln = new AtomicInteger();
-        AtomicReference<Duration> largestTimeGap = new AtomicReference<>(Duration.ofSeconds(0));
-        AtomicReference<String> lines = new AtomicReference<>("Log file does not have two lines with timestamps");
-        AtomicReference<Stanza> prevStanza = new AtomicReference<>();
-        new LogReader(lf).getStanzas().forEach(st -> {
-            Stanza prev = prevStanza.get();
+        if (lf.isJson()) {
+            System.out.println(lf.filename + " -> JSON, with ISO time stamps");
+            return;
+        }
+        List<String> timeStamps = lf.sampleTimeStamps();
+        LogFile.TimestampFormat format = LogFile.TimestampFormat.detect(timeStamps);
+        System.out.println(lf.filename + " -> " + (format != LogFile.TimestampFormat.NONE ? format :
+                timeStamps.isEmpty() ? "No Timestamps found" : "Mixed formats, guessed line by line"));
+    }
+
+    /**
+     * The time gap between a stanza and the next, and the line number of the last line of the first one.
+     * A gap is updated in place when it is reused.
+     */
+    private static final class Gap {
+        int line;
+        Stanza before;
+        Stanza after;
+        long nanos;
+
+        Gap set(int line, Stanza before, Stanza after, long nanos) {
+            this.line = line;
+            this.before = before;
+            this.after = after;
+            this.nanos = nanos;
+            return this;
+        }
+
+        long size() {
+            return Math.abs(nanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Line %d: %s\nLine %d: %s", line, before.getDisplayText(), line + 1, after.getDisplayText());
+        }
+    }
+
+    private interface GapConsumer {
+        void accept(int line, Stanza before, Stanza after, long nanos);
+    }
+
+    /**
+     * Go through the gaps between each stanza with a time stamp and the next, in one pass, creating nothing.
+     */
+    private static void forEachGap(Stream<Stanza> stanzas, GapConsumer consumer) {
+        int line = 0;
+        Stanza prev = null;
+        for (Iterator<Stanza> iterator = stanzas.iterator(); iterator.hasNext(); ) {
+            Stanza st = iterator.next();
             if (prev != null) {
-                ln.addAndGet(prev.getText().split("\r\n|\r|\n").length);
-                if (!prev.isPreamble()) {
-                    Duration timeDiff = Duration.between(prev.getTime(), st.getTime());
-                    if (timeDiff.abs().compareTo(largestTimeGap.get()) > 0) {
-                        lines.set(String.format("Line %d: %s\nLine %d: %s", ln.get(), prev.getDisplayText(), ln.get() + 1, st.getDisplayText()));
-                        largestTimeGap.set(timeDiff);
-                    } else if (timeDiff.compareTo(largestTimeGap.get()) == 0) {
-                        lines.set(String.format("%s\n\nLine %d: %s\nLine %d: %s", lines.get(), ln.get(), prev.getDisplayText(), ln.get() + 1, st.getDisplayText()));
-                    }
-                }
+                line += prev.getLines(); //Add the number lines in the stanza to the line number counter variable
+                if (!prev.isPreamble()) consumer.accept(line, prev, st, st.getEpochNanos() - prev.getEpochNanos());
             }
-            prevStanza.set(st);
+            prev = st;
+        }
+    }
+
+    private void largestTimeGap(Stream<Stanza> stanzas, OutputSink out) {
+        // the biggest gap, and any as big
+        List<Gap> largest = new ArrayList<>();
+        forEachGap(stanzas, (line, prev, st, nanos) -> {
+            long biggest = largest.isEmpty() ? -1 : largest.get(0).size();
+            if (Math.abs(nanos) > biggest) largest.clear();
+            if (Math.abs(nanos) >= biggest) largest.add(new Gap().set(line, prev, st, nanos));
         });
-        if (lines.get().isEmpty()) {
-            System.out.println("Log file does not have two lines with timestamps");
+        if (largest.isEmpty()) {
+            out.println("Log file does not have two lines with timestamps");
         } else {
-            System.out.println(lines + "\n\nTime Gap = " + humanReadableFormat(largestTimeGap.get()));
+            String lines = largest.stream().map(Gap::toString).collect(Collectors.joining("\n\n"));
+            out.println(lines + "\n\nTime Gap = " + humanReadableFormat(Duration.ofNanos(largest.get(0).nanos)));
         }
     }
 
-    private void minimumTimeGap(LogFile lf, Duration minTimeGap) {
-        AtomicInteger ln = new AtomicInteger();
-        AtomicReference<Stanza> prevStanza = new AtomicReference<>();
-        new LogReader(lf).getStanzas().forEach(st -> {
-            Stanza prev = prevStanza.get();
-            if (prev != null) {
-                ln.addAndGet(prev.getText().split("\r\n|\r|\n").length); //Add the number lines in the stanza to the line number counter variable
-                if (!prev.isPreamble()) {
-                    Duration timeDiff = Duration.between(prev.getTime(), st.getTime());
-                    if (timeDiff.abs().compareTo(minTimeGap) >= 0)
-                        System.out.printf("Line %d: %s\nLine %d: %s\nTime Gap: %s\n\n", ln.get(), prev.getDisplayText(), ln.get() + 1, st.getDisplayText(), humanReadableFormat(timeDiff));
-                }
-            }
-            prevStanza.set(st);
+    private void topTimeGaps(Stream<Stanza> stanzas, int k, OutputSink out) {
+        // the smallest of the biggest gaps so far is the first to go, and the later of two the same size
+        Comparator<Gap> bySize = Comparator.comparingLong(Gap::size).thenComparing(Comparator.comparingInt((Gap gap) -> gap.line).reversed());
+        PriorityQueue<Gap> top = new PriorityQueue<>(k, bySize);
+        forEachGap(stanzas, (line, prev, st, nanos) -> {
+            if (top.size() < k) top.add(new Gap().set(line, prev, st, nanos));
+            else if (Math.abs(nanos) > top.peek().size()) top.add(top.poll().set(line, prev, st, nanos));
         });
+        if (top.isEmpty()) {
+            out.println("Log file does not have two lines with timestamps");
+            return;
+        }
+        List<Gap> biggestFirst = new ArrayList<>(top);
+        biggestFirst.sort(bySize.reversed());
+        for (Gap gap : biggestFirst) out.print(gap + "\nTime Gap: " + humanReadableFormat(Duration.ofNanos(gap.nanos)) + "\n\n");
+    }
+
+    private void minimumTimeGap(Stream<Stanza> stanzas, Duration minTimeGap, OutputSink out) {
+        long minNanos = minTimeGap.toNanos();
+        forEachGap(stanzas, (line, prev, st, nanos) -> {
+            if (Math.abs(nanos) >= minNanos)
+                out.print(new Gap().set(line, prev, st, nanos) + "\nTime Gap: " + humanReadableFormat(Duration.ofNanos(nanos)) + "\n\n");
+        });
+    }
+
+    /**
+     * @return the distribution of the gaps in all the files, each file being gone through in parallel with the others
+     */
+    private static GapHistogram gapHistogram(List<LogFile> logFiles, TimeWindow window) {
+        List<GapHistogram> histograms = logFiles.parallelStream().map(lf -> {
+            GapHistogram histogram = new GapHistogram();
+            try (Stream<Stanza> stanzas = TimeWindow.stream(lf, window)) {
+                forEachGap(stanzas, (line, prev, st, nanos) -> histogram.record(Math.abs(nanos)));
+            }
+            return histogram;
+        }).collect(Collectors.toList());
+        GapHistogram total = new GapHistogram();
+        histograms.forEach(total::add);
+        return total;
     }
 
     String humanReadableFormat(Duration duration) {
@@ -0,0 +1,267 @@
+package io.openliberty.frankenlog;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+
+/**
+ * A {@link LogReader} that maps the log file into memory one window at a time
+ * and finds the line and stanza boundaries by looking at the raw bytes.
+ * Only the timestamp of a line is decoded while reading.
+ * The stanzas are {@link CompactStanza}s, which decode their text from the file whenever it is asked for.
+ */
+class MappedLogReader extends LogReader {
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+    private static final byte[] ASCII_DELIMITERS = {'\n', '\r', '[', ']', ' '};
+
+    private final FileChannel channel;
+    private final Charset charset = Charset.defaultCharset();
+    /** The end of the range of the file being read */
+    private final long end;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    /** The file position of the next unread line */
+    private long position;
+    /** How far the stanzas read have come since the last time they were added to the {@link Stats} */
+    private long counted;
+    /** The current window seen as ASCII characters, so the time stamp parser can look at it without decoding it */
+    private final CharSequence windowChars = new CharSequence() {
+        public int length() { return window.limit(); }
+        public char charAt(int index) { return (char) (window.get(index) & 0xFF); }
+        public CharSequence subSequence(int start, int end) { return decode(windowStart + start, windowStart + end); }
+    };
+    /** The file positions where the current stanza starts, and where its text starts and ends */
+    private long stanzaOffset, stanzaStart, stanzaEnd;
+    private long lastStanzaOffset = -1;
+    private int stanzaLines;
+    private long previousTime = NO_TIMESTAMP;
+
+    MappedLogReader(LogFile lf) {
+        this(lf, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedLogReader(LogFile lf, int windowSize) {
+        this(lf, windowSize, 0, -1);
+    }
+
+    /**
+     * Read only part of a file.
+     * The range should start at the beginning of a line, and end at the beginning of a line or at the end of the file.
+     *
+     * @param end the end of the range, or -1 for the end of the file
+     */
+    MappedLogReader(LogFile lf, int windowSize, long start, long end) {
+        super(lf, null);
+        this.windowSize = windowSize;
+        this.position = this.counted = start;
+        try {
+            this.channel = FileChannel.open(Paths.get(lf.filename), StandardOpenOption.READ);
+            this.end = end < 0 ? channel.size() : Math.min(end, channel.size());
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * The bytes can only be scanned directly if the file is a plain, regular file
+     * and the platform charset encodes the delimiters we look for as single ASCII bytes,
+     * and the stanzas start with time stamps rather than being JSON lines.
+     */
+    static boolean supports(LogFile lf) {
+        Path path = Paths.get(lf.filename);
+        return lf.isPlainFile() && Files.isRegularFile(path)
+                && Arrays.equals(ASCII_DELIMITERS, new String(ASCII_DELIMITERS, StandardCharsets.US_ASCII).getBytes(Charset.defaultCharset()))
+                && !lf.isJson();
+    }
+
+    @Override
+    Stanza next() {
+        long start = Stats.start(++ticks);
+        try {
+            return readStanza();
+        } finally {
+            Stats.stop(Stats.Phase.PARSING, start);
+        }
+    }
+
+    private Stanza readStanza() {
+        while (position < end) {
+            linesRead++;
+            long lineStart = position;
+            long eol = endOfLine(lineStart, stanzaLines == 0 ? lineStart : stanzaStart);
+            position = eol < end ? eol + 1 : end;
+            long contentEnd = eol > lineStart && byteAt(eol - 1) == '\r' ? eol - 1 : eol;
+            long textStart = endOfTimeStamp(lineStart, contentEnd);
+            long time = textStart < 0 ? NO_TIMESTAMP : parser.parse(windowChars, (int) (lineStart - windowStart), (int) (textStart - 1 - windowStart));
+            if (time == NO_TIMESTAMP) {
+                // there was no timestamp, so this is a continuation line
+                if (textStart >= 0) parseFailures++;
+                continuationLines++;
+                if (stanzaLines++ == 0) stanzaOffset = stanzaStart = lineStart;
+                stanzaEnd = contentEnd;
+                continue;
+            }
+            //If we get to here there was a time stamp and it is not the preamble or a continuation line
+            Stanza result = stanzaLines == 0 ? null : createStanza();
+            this.previousTime = time;
+            stanzaOffset = lineStart;
+            stanzaStart = textStart;
+            stanzaEnd = contentEnd;
+            stanzaLines = 1;
+            if (result != null) return result;
+        }
+        // at the end of the file - return a Stanza iff there is some content
+        Stanza last = stanzaLines == 0 ? null : createStanza();
+        countBytes();
+        finish();
+        return last;
+    }
+
+    private void countBytes() {
+        addStats(position - counted);
+        counted = position;
+    }
+
+    /**
+     * @return the file position of the first line of the stanza last returned by {@link #next()}
+     */
+    long getLastStanzaOffset() {
+        return lastStanzaOffset;
+    }
+
+    /**
+     * Find the first line that starts with a time stamp, beginning with the first whole line at or after the specified position.
+     * This is where a stanza starts, so it is a safe place to split the file.
+     *
+     * @return the position of the line, or the end of the range if there is none
+     */
+    long nextStanzaStart(long from) {
+        long lineStart = from;
+        if (from > 0) {
+            long eol = endOfLine(from - 1, from - 1);
+            lineStart = eol < end ? eol + 1 : end;
+        }
+        while (lineStart < end && timeOfLine(lineStart) == NO_TIMESTAMP) {
+            long eol = endOfLine(lineStart, lineStart);
+            lineStart = eol < end ? eol + 1 : end;
+        }
+        return lineStart;
+    }
+
+    /**
+     * @return the time stamp of the line that starts at the specified position, or {@link TimestampParser#NO_TIMESTAMP}
+     */
+    private long timeOfLine(long lineStart) {
+        long eol = endOfLine(lineStart, lineStart);
+        long contentEnd = eol > lineStart && byteAt(eol - 1) == '\r' ? eol - 1 : eol;
+        long textStart = endOfTimeStamp(lineStart, contentEnd);
+        return textStart < 0 ? NO_TIMESTAMP : parser.parse(windowChars, (int) (lineStart - windowStart), (int) (textStart - 1 - windowStart));
+    }
+
+    /**
+     * Find where to start reading for the stanzas at or after a time, without reading the whole file,
+     * by binary-searching the byte offsets.
+     * At each step, move to the next line that starts with a time stamp, and compare that time.
+     * This assumes that the file is in time order.
+     *
+     * @return the start of the last stanza found to be before the time, or the start of the range
+     */
+    long bisect(long epochNanos) {
+        long lo = position, hi = end;
+        while (hi - lo > windowSize) {
+            long mid = lo + (hi - lo) / 2;
+            long stanzaStart = nextStanzaStart(mid);
+            if (stanzaStart < hi && timeOfLine(stanzaStart) < epochNanos) lo = stanzaStart;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private Stanza createStanza() {
+        stanzasRead++;
+        try {
+            return new CompactStanza(logFile, stanzaOffset, (int) (stanzaEnd - stanzaOffset), (int) (stanzaStart - stanzaOffset), stanzaLines, previousTime);
+        } finally {
+            lastStanzaOffset = stanzaOffset;
+            stanzaLines = 0;
+        }
+    }
+
+    /**
+     * Find the end of the line that starts at the specified position,
+     * making sure that everything from <code>keepFrom</code> to the end of the line is in the current window.
+     *
+     * @return the position of the newline character, or the end of the range if there is none
+     */
+    private long endOfLine(long lineStart, long keepFrom) {
+        if (window == null || keepFrom < windowStart) map(keepFrom, windowSize);
+        long p = lineStart;
+        for (;;) {
+            for (; p < windowEnd; p++) if (byteAt(p) == '\n') return p;
+            if (windowEnd == end) return end;
+            // the line continues beyond this window, so map a new one that starts with the kept bytes
+            map(keepFrom, Math.max(windowSize, 2 * (windowEnd - keepFrom)));
+        }
+    }
+
+    /**
+     * @return the position after the <code>"] "</code> that ends the time stamp,
+     * or -1 if the line does not start with something that looks like a time stamp
+     */
+    private long endOfTimeStamp(long lineStart, long contentEnd) {
+        if (lineStart == contentEnd || byteAt(lineStart) != '[') return -1;
+        for (long p = lineStart + 1; p < contentEnd - 1; p++)
+            if (byteAt(p) == ']' && byteAt(p + 1) == ' ') return p + 2;
+        return -1;
+    }
+
+    private void map(long start, long length) {
+        length = Math.min(length, end - start);
+        if (length > Integer.MAX_VALUE) throw new IllegalStateException("Stanza too large to map at offset " + start + " in " + logFile.filename);
+        long started = Stats.now();
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            Stats.time(Stats.Phase.READING, started);
+            windowStart = start;
+            windowEnd = start + length;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    private byte byteAt(long pos) {
+        return window.get((int) (pos - windowStart));
+    }
+
+    private CharSequence decode(long start, long end) {
+        ByteBuffer bytes = window.duplicate()
+                .position((int) (start - windowStart))
+                .limit((int) (end - windowStart));
+        return charset.decode(bytes);
+    }
+
+    @Override
+    public void close() {
+        countBytes();
+        finish();
+        window = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+}
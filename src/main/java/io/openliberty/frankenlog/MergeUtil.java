@@ -1,10 +1,19 @@
 package io.openliberty.frankenlog;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
 import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -16,36 +25,131 @@ public enum MergeUtil {
     }
 
     public static <T extends Comparable<T>> Stream<T> merge(Stream<Stream<T>> streamOfStreams) {
-        return StreamSupport.stream(new MergingSpliterator<>(streamOfStreams), false);
+        List<Iterator<T>> iterators = streamOfStreams.map(Stream::iterator).collect(Collectors.toList());
+        return StreamSupport.stream(new MergingSpliterator<>(iterators, null), false);
     }
 
     /**
-     * A spliterator that gets the lowest element from multiple streams
+     * Merge streams of elements that are ordered by a primitive key.
+     * Elements with equal keys come out in the order of the streams they came from.
      */
-    private static class MergingSpliterator<T extends Comparable<T>> implements Spliterator<T> {
-        private final PriorityQueue<ComparableIterator<T>> pq;
+    public static <T> Stream<T> merge(Stream<Stream<T>> streamOfStreams, ToLongFunction<? super T> key) {
+        List<Iterator<T>> iterators = streamOfStreams.map(Stream::iterator).collect(Collectors.toList());
+        return StreamSupport.stream(new MergingSpliterator<>(iterators, key), false);
+    }
+
+    /**
+     * Merge streams of elements that are ordered by a primitive key, reading ahead from each one on a separate thread,
+     * so the merging thread only has to compare the keys and hand the elements on.
+     * Each stream has at most <code>batchesAhead</code> batches of <code>batchSize</code> elements waiting to be merged.
+     */
+    public static <T> Stream<T> mergeReadingAhead(Stream<Stream<T>> streamOfStreams, ToLongFunction<? super T> key, int batchSize, int batchesAhead) {
+        // start every producer before waiting for the first element of any of them
+        List<Iterator<T>> iterators = streamOfStreams
+                .map(Stream::iterator)
+                .map(iterator -> new ReadAheadIterator<>(iterator, batchSize, batchesAhead))
+                .collect(Collectors.toList());
+        return StreamSupport.stream(new MergingSpliterator<>(iterators, key), false);
+    }
+
+    /**
+     * A spliterator that gets the lowest element from multiple streams using a tournament tree of losers.
+     * Each internal node of the tree remembers the input that lost the match played there,
+     * and the overall winner is kept at the top.
+     * After the winner hands on its element, only the matches on the path from its leaf to the root are replayed,
+     * so each element costs one comparison per level of the tree.
+     * <p>
+     * When there is a primitive key, the keys of the current heads are kept in an array,
+     * so the comparisons need neither virtual calls nor allocations.
+     * Ties are won by the input that came first.
+     */
+    private static class MergingSpliterator<T> implements Spliterator<T> {
+        private final int size;
+        private final List<Iterator<T>> inputs;
+        private final Object[] heads;
+        private final ToLongFunction<? super T> key;
+        private final long[] keys;
+        private final boolean[] exhausted;
+        /** tree[0] is the overall winner, tree[1..size-1] are the losers at each internal node */
+        private final int[] tree;
+        /** For choosing which merges to time */
+        private int ticks;
+
+        MergingSpliterator(List<Iterator<T>> inputs, ToLongFunction<? super T> key) {
+            this.size = inputs.size();
+            this.inputs = inputs;
+            this.heads = new Object[size];
+            this.key = key;
+            this.keys = new long[size];
+            this.exhausted = new boolean[size];
+            this.tree = new int[Math.max(size, 1)];
+            for (int i = 0; i < size; i++) advance(i);
+            if (size > 0) tree[0] = build(1);
+        }
 
-        MergingSpliterator(Stream<Stream<T>> streamOfStreams) {
-            this.pq = new PriorityQueue<>();
-            // put all the non-empty streams into the priority queue as comparable iterators
-            streamOfStreams.map(Stream::iterator).map(ComparableIterator::new).filter(Iterator::hasNext).forEach(pq::add);
+        /**
+         * Play the matches below a node, recording the losers.
+         * The leaf for input i is node size + i.
+         *
+         * @return the winner
+         */
+        private int build(int node) {
+            if (node >= size) return node - size;
+            int left = build(2 * node), right = build(2 * node + 1);
+            boolean leftWins = beats(left, right);
+            tree[node] = leftWins ? right : left;
+            return leftWins ? left : right;
         }
 
+        private void advance(int input) {
+            Iterator<T> iterator = inputs.get(input);
+            if (iterator.hasNext()) {
+                T head = iterator.next();
+                heads[input] = head;
+                if (key != null) keys[input] = key.applyAsLong(head);
+            } else {
+                heads[input] = null;
+                exhausted[input] = true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean beats(int a, int b) {
+            if (exhausted[a]) return false;
+            if (exhausted[b]) return true;
+            int cmp = key == null
+                    ? ((Comparable<T>) heads[a]).compareTo((T) heads[b])
+                    : Long.compare(keys[a], keys[b]);
+            return cmp < 0 || (cmp == 0 && a < b);
+        }
+
+        @SuppressWarnings("unchecked")
         public boolean tryAdvance(Consumer<? super T> action) {
-            // The priority queue will return the lowest iterator first,
-            // which is the iterator with the lowest T.
-            var iterator = pq.poll();
-            // If the pq was empty, there are no elements left.
-            // Return false to indicate this.
-            if (null == iterator) return false;
-            // Getting the iterator from the queue means iter.hasNext() was true, so don't check again.
-            // Calling next() will change the ordering of this iterator,
-            // but that is ok because it is outside the priority queue
-            action.accept(iterator.next());
-            // Only re-insert the iterator if it has another element.
-            // The ordering will potentially be different, but that is ok.
-            if (iterator.hasNext()) pq.add(iterator);
-            // Return true to show that the action was applied
+            if (size == 0) return false;
+            int winner = tree[0];
+            if (exhausted[winner]) return false;
+            T element = (T) heads[winner];
+            Events.MergeStall stall = new Events.MergeStall();
+            stall.begin();
+            advance(winner);
+            stall.end();
+            if (stall.shouldCommit()) {
+                // the element being handed on came from the input that was waited for
+                stall.input = element instanceof Stanza ? ((Stanza) element).getLogFile().filename : "input " + winner;
+                stall.commit();
+            }
+            long start = Stats.start(++ticks);
+            // replay the matches on the path from the winner's leaf to the root
+            for (int node = (winner + size) / 2; node > 0; node /= 2) {
+                if (beats(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+            Stats.stop(Stats.Phase.MERGING, start);
+            action.accept(element);
             return true;
         }
 
@@ -63,37 +167,94 @@ public enum MergeUtil {
     }
 
     /**
-     * An iterator whose natural ordering matches the natural ordering of its next element.
-     * Note: the ordering of these objects can change as iteration progresses!
-     * Also note: this class assumes that null is not a valid element in the underlying iterator.
+     * An iterator that reads batches from another iterator ahead of time, on one of a small pool of threads.
+     * A batch is read only when there is room for it, so no pool thread ever waits for the consumer,
+     * and however many iterators there are, the pool cannot be tied up by the ones nobody is reading.
      */
-    private static class ComparableIterator<T extends Comparable<T>> implements Iterator<T>, Comparable<ComparableIterator<T>> {
-        private final Iterator<T> iterator;
-        private T nextElement;
+    private static class ReadAheadIterator<T> implements Iterator<T> {
+        private static final ExecutorService PRODUCERS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "lol-read-ahead");
+            t.setDaemon(true);
+            return t;
+        });
+        /** Marks the end of the batches */
+        private final List<T> end = Collections.emptyList();
+        private final Iterator<T> source;
+        private final int batchSize;
+        private final int batchesAhead;
+        private final BlockingQueue<List<T>> batches;
+        private final AtomicBoolean reading = new AtomicBoolean();
+        private volatile boolean ended;
+        private volatile Throwable failure;
+        private Iterator<T> batch = Collections.emptyIterator();
+        private boolean finished;
 
-        ComparableIterator(Iterator<T> iterator) {
-            this.iterator = iterator;
-            this.nextElement = iterator.hasNext() ? iterator.next() : null;
+        ReadAheadIterator(Iterator<T> source, int batchSize, int batchesAhead) {
+            this.source = source;
+            this.batchSize = batchSize;
+            this.batchesAhead = batchesAhead;
+            // leave room for the end marker
+            this.batches = new ArrayBlockingQueue<>(batchesAhead + 1);
+            readAhead();
         }
 
-        @Override
-        public T next() {
-            if (nextElement == null) throw new NoSuchElementException();
-            T result = nextElement;
-            this.nextElement = iterator.hasNext() ? iterator.next() : null;
-            return result;
+        private void readAhead() {
+            if (!ended && batches.size() < batchesAhead && reading.compareAndSet(false, true)) PRODUCERS.execute(this::read);
+        }
+
+        private void read() {
+            try {
+                if (ended) return;
+                while (batches.size() < batchesAhead && source.hasNext()) {
+                    List<T> list = new ArrayList<>(batchSize);
+                    while (list.size() < batchSize && source.hasNext()) list.add(source.next());
+                    batches.add(list);
+                }
+                if (!source.hasNext()) {
+                    ended = true;
+                    batches.add(end);
+                    return;
+                }
+            } catch (Throwable t) {
+                failure = t;
+                ended = true;
+                batches.add(end);
+                return;
+            } finally {
+                reading.set(false);
+            }
+            // the consumer may have made room since the last check
+            readAhead();
         }
 
         @Override
         public boolean hasNext() {
-            return nextElement != null;
+            while (!batch.hasNext()) {
+                if (finished) return false;
+                List<T> next;
+                try {
+                    next = batches.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+                if (next == end) {
+                    finished = true;
+                    if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+                    if (failure instanceof Error) throw (Error) failure;
+                    if (failure != null) throw new IllegalStateException(failure);
+                    return false;
+                }
+                batch = next.iterator();
+                readAhead();
+            }
+            return true;
         }
 
         @Override
-        public int compareTo(ComparableIterator<T> that) {
-            if (null == this.nextElement) throw new IllegalStateException();
-            if (null == that.nextElement) throw new IllegalStateException();
-            return this.nextElement.compareTo(that.nextElement);
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return batch.next();
         }
     }
 }
@@ -0,0 +1,308 @@
+package io.openliberty.frankenlog;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static picocli.CommandLine.Help.Ansi.Style.faint;
+
+/**
+ * Where the output of a command goes.
+ * Text is encoded straight into large byte buffers, which a writer thread writes to a channel,
+ * so the thread producing the output only waits when every buffer is full.
+ * The buffers are reused, and the text of a {@link CompactStanza} is copied from the file as bytes where it can be.
+ * <p>
+ * Nothing is written until a buffer fills, or until {@link #flush()} or {@link #close()} is called.
+ * If the channel stops taking output, e.g. because the reader of a pipe has gone away,
+ * the rest is thrown away, just as {@link java.io.PrintStream} would.
+ */
+class OutputSink implements AutoCloseable {
+    enum Mode {
+        /** Text only, with no escape sequences */
+        PLAIN,
+        /** Highlight matches and fade context with ANSI escape sequences */
+        ANSI,
+        /** The stanzas as they were in the log, with their own time stamps */
+        RAW
+    }
+
+    static Mode mode = Mode.ANSI;
+    static final int BUFFER_SIZE = 1 << 20;
+    static final int BUFFERS = 3;
+    /** Marks the end of the output for the writer thread */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+    private static final DateTimeFormatter TO_THE_SECOND = DateTimeFormatter.ofPattern("'['yy/MM/dd H:mm:ss:").withZone(ZoneOffset.UTC);
+
+    private final WritableByteChannel channel;
+    private final Mode outputMode;
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final boolean asciiCompatible = isAsciiCompatible(Charset.defaultCharset());
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private final BlockingQueue<ByteBuffer> emptied = new ArrayBlockingQueue<>(BUFFERS);
+    private final Thread writer;
+    private volatile boolean failed;
+    private ByteBuffer buffer;
+    /** For choosing which stanzas to time */
+    private int ticks;
+    /** The display time stamp of the last second printed for each file, so it is formatted only once a second */
+    private final Map<LogFile, TimePrefix> prefixes = new HashMap<>();
+
+    private static final class TimePrefix {
+        final String suffix;
+        long second = Long.MIN_VALUE;
+        String text;
+
+        TimePrefix(LogFile lf) {
+            this.suffix = " " + lf.shortname + "] ";
+        }
+    }
+
+    /**
+     * @return a sink for the standard output in the chosen {@link #mode}
+     */
+    static OutputSink toStandardOutput() {
+        // anything already printed must come first
+        System.out.flush();
+        return new OutputSink(new FileOutputStream(FileDescriptor.out).getChannel(), mode);
+    }
+
+    OutputSink(WritableByteChannel channel, Mode outputMode) {
+        this.channel = channel;
+        this.outputMode = outputMode;
+        for (int i = 1; i < BUFFERS; i++) emptied.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.writer = new Thread(this::write, "lol-output");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) ascii[i] = (byte) i;
+        return new String(ascii, StandardCharsets.US_ASCII).equals(new String(ascii, charset));
+    }
+
+    private void write() {
+        try {
+            for (ByteBuffer full = filled.take(); full != END; full = filled.take()) {
+                Events.OutputFlush flush = new Events.OutputFlush();
+                flush.begin();
+                flush.bytes = full.remaining();
+                long start = Stats.now();
+                try {
+                    while (!failed && full.hasRemaining()) channel.write(full);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                Stats.time(Stats.Phase.OUTPUT, start);
+                flush.commit();
+                emptied.put(full.clear());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    Mode getMode() {
+        return outputMode;
+    }
+
+    void print(CharSequence text) {
+        append(text);
+    }
+
+    void println(CharSequence text) {
+        append(text);
+        append('\n');
+    }
+
+    /**
+     * Print a stanza as <code>gather</code> does, with a time stamp in a standard form followed by the short name of its file.
+     */
+    void printStanza(Stanza stanza) {
+        long start = Stats.start(++ticks);
+        try {
+            if (stanza.isPreamble()) {
+                if (outputMode != Mode.RAW) {
+                    append('\n');
+                    append(stanza.getShortname());
+                    append('\n');
+                }
+            } else if (outputMode == Mode.RAW) {
+                append(stanza.getUnformattedTime());
+                append(' ');
+            } else {
+                appendDisplayTime(stanza);
+            }
+            appendText(stanza);
+            append('\n');
+        } finally {
+            Stats.stop(Stats.Phase.OUTPUT, start);
+        }
+    }
+
+    /**
+     * Print a stanza that matched a search, using the highlighted text if it has already been worked out.
+     */
+    void printMatch(Stanza stanza, CharSequence highlighted) {
+        long start = Stats.start(++ticks);
+        try {
+            if (highlighted != null && outputMode == Mode.ANSI) {
+                println(highlighted);
+                return;
+            }
+            append(stanza.getUnformattedTime());
+            append(' ');
+            appendText(stanza);
+            append('\n');
+        } finally {
+            Stats.stop(Stats.Phase.OUTPUT, start);
+        }
+    }
+
+    /**
+     * Print a stanza around a match, faintly in {@link Mode#ANSI} mode.
+     */
+    void printContext(Stanza stanza) {
+        long start = Stats.start(++ticks);
+        try {
+            if (outputMode == Mode.ANSI) {
+                println(faint.on() + stanza + faint.off());
+                return;
+            }
+            append(stanza.getUnformattedTime());
+            append(' ');
+            appendText(stanza);
+            append('\n');
+        } finally {
+            Stats.stop(Stats.Phase.OUTPUT, start);
+        }
+    }
+
+    private void appendDisplayTime(Stanza stanza) {
+        TimePrefix prefix = prefixes.computeIfAbsent(stanza.getLogFile(), TimePrefix::new);
+        long nanos = stanza.getEpochNanos();
+        long second = Math.floorDiv(nanos, 1_000_000_000L);
+        if (second != prefix.second) {
+            prefix.second = second;
+            prefix.text = TO_THE_SECOND.format(Instant.ofEpochSecond(second));
+        }
+        append(prefix.text);
+        int millis = (int) (Math.floorMod(nanos, 1_000_000_000L) / 1_000_000);
+        append((char) ('0' + millis / 100));
+        append((char) ('0' + millis / 10 % 10));
+        append((char) ('0' + millis % 10));
+        append(prefix.suffix);
+    }
+
+    private void appendText(Stanza stanza) {
+        if (asciiCompatible && stanza instanceof CompactStanza) {
+            ByteBuffer bytes = ((CompactStanza) stanza).getTextBytes();
+            if (bytes != null && appendAscii(bytes)) return;
+        }
+        append(stanza.getText());
+    }
+
+    /**
+     * Copy bytes that need no decoding, i.e. ASCII without carriage returns.
+     *
+     * @return false, having copied nothing, if the bytes need decoding
+     */
+    private boolean appendAscii(ByteBuffer bytes) {
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            byte b = bytes.get(i);
+            if (b < 0 || b == '\r') return false;
+        }
+        while (bytes.hasRemaining()) {
+            if (!buffer.hasRemaining()) handOff();
+            int n = Math.min(bytes.remaining(), buffer.remaining());
+            buffer.put(bytes.duplicate().limit(bytes.position() + n));
+            bytes.position(bytes.position() + n);
+        }
+        return true;
+    }
+
+    private void append(char c) {
+        if (c >= 0x80 || !asciiCompatible) {
+            append(String.valueOf(c));
+            return;
+        }
+        if (!buffer.hasRemaining()) handOff();
+        buffer.put((byte) c);
+    }
+
+    private void append(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80 || !asciiCompatible) {
+                encode(CharBuffer.wrap(text, i, length));
+                return;
+            }
+            if (!buffer.hasRemaining()) handOff();
+            buffer.put((byte) c);
+        }
+    }
+
+    private void encode(CharBuffer chars) {
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) handOff();
+        while (encoder.flush(buffer).isOverflow()) handOff();
+    }
+
+    /**
+     * Give the current buffer to the writer thread, and take an empty one.
+     */
+    private void handOff() {
+        try {
+            filled.put(buffer.flip());
+            buffer = emptied.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Send what has been printed so far to the writer thread, without waiting for it to be written.
+     */
+    void flush() {
+        if (buffer.position() > 0) handOff();
+    }
+
+    /**
+     * Write everything that has been printed, and stop the writer thread.
+     * The channel itself is left open.
+     */
+    @Override
+    public void close() {
+        flush();
+        try {
+            filled.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package io.openliberty.frankenlog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static picocli.CommandLine.Help.Ansi.Style.fg_red;
+
+/**
+ * The patterns that <code>grep</code> searches for, any of which makes a stanza match.
+ * <p>
+ * Most patterns contain some literal text that every match must include, e.g. <code>CWWKF0011I</code>.
+ * Those literals are looked for all at once with an Aho-Corasick automaton, in a single pass over the text,
+ * and only the patterns whose literals were found are run as regular expressions.
+ * A pattern with no such literal is always run.
+ * <p>
+ * The matches found while searching are kept, so highlighting them needs no second search.
+ */
+class PatternSet {
+    private final Pattern[] patterns;
+    /** The patterns that have to be run on every text, because they have no required literal */
+    private final int[] unfiltered;
+    private final LiteralMatcher prefilter;
+
+    PatternSet(List<Pattern> patterns) {
+        this.patterns = patterns.toArray(new Pattern[0]);
+        Map<String, List<Integer>> literals = new LinkedHashMap<>();
+        List<Integer> unfiltered = new ArrayList<>();
+        for (int i = 0; i < this.patterns.length; i++) {
+            List<String> required = requiredLiterals(this.patterns[i]);
+            if (required == null) unfiltered.add(i);
+            else for (String literal : required) literals.computeIfAbsent(literal, l -> new ArrayList<>()).add(i);
+        }
+        this.unfiltered = unfiltered.stream().mapToInt(Integer::intValue).toArray();
+        this.prefilter = new LiteralMatcher(literals, this.patterns.length);
+    }
+
+    int size() {
+        return patterns.length;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(patterns);
+    }
+
+    /**
+     * Search some text for the patterns.
+     *
+     * @param all whether to find every match, for highlighting, or to stop at the first
+     * @return the start and end of each match, in order, or an empty array if not all were asked for,
+     * or null if nothing matches
+     */
+    int[] find(CharSequence text, boolean all) {
+        boolean[] candidates = prefilter.candidates(text);
+        int[] ranges = null;
+        int count = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            if (!candidates[i] && Arrays.binarySearch(unfiltered, i) < 0) continue;
+            Matcher m = patterns[i].matcher(text);
+            while (m.find()) {
+                if (!all) return new int[0];
+                if (ranges == null) ranges = new int[8];
+                if (count + 2 > ranges.length) ranges = Arrays.copyOf(ranges, 2 * ranges.length);
+                ranges[count++] = m.start();
+                ranges[count++] = m.end();
+            }
+        }
+        if (ranges == null) return null;
+        return patterns.length == 1 ? Arrays.copyOf(ranges, count) : union(ranges, count);
+    }
+
+    /**
+     * Put the matches of several patterns in order, joining any that overlap.
+     */
+    private static int[] union(int[] ranges, int count) {
+        Integer[] order = new Integer[count / 2];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> ranges[2 * a] != ranges[2 * b] ? Integer.compare(ranges[2 * a], ranges[2 * b]) : Integer.compare(ranges[2 * b + 1], ranges[2 * a + 1]));
+        int[] union = new int[count];
+        int n = 0;
+        for (int i : order) {
+            int start = ranges[2 * i], end = ranges[2 * i + 1];
+            if (n > 0 && start < union[n - 1]) union[n - 1] = Math.max(union[n - 1], end);
+            else {
+                union[n++] = start;
+                union[n++] = end;
+            }
+        }
+        return Arrays.copyOf(union, n);
+    }
+
+    /**
+     * @return the time stamp and text of a stanza, with the matches found by {@link #find(CharSequence, boolean)} in red
+     */
+    static CharSequence highlight(String unformattedTime, String text, int[] ranges) {
+        StringBuilder s = new StringBuilder(unformattedTime).append(" ");
+        int last = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            s.append(text, last, ranges[i]).append(fg_red.on()).append(text, ranges[i], ranges[i + 1]).append(fg_red.off());
+            last = ranges[i + 1];
+        }
+        return s.append(text, last, text.length());
+    }
+
+    /**
+     * Find literal text that every match of a pattern must contain.
+     * This only understands the common parts of the syntax, and gives up on anything else.
+     *
+     * @return a literal for each top-level alternative, any of which is in every match, or null if there is none
+     */
+    static List<String> requiredLiterals(Pattern pattern) {
+        if ((pattern.flags() & Pattern.LITERAL) != 0) return pattern.pattern().isEmpty() ? null : Collections.singletonList(pattern.pattern());
+        if ((pattern.flags() & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) return null;
+        String regex = pattern.pattern();
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        String best = "";
+        int depth = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            boolean endsRun = true;
+            switch (c) {
+                case '\\':
+                    if (++i == regex.length()) return null;
+                    char e = regex.charAt(i);
+                    if (e == 'Q') {
+                        int end = regex.indexOf("\\E", i + 1);
+                        if (depth == 0) run.append(end < 0 ? regex.substring(i + 1) : regex.substring(i + 1, end));
+                        i = end < 0 ? regex.length() : end + 1;
+                        endsRun = false;
+                    } else if (Character.isLetterOrDigit(e)) {
+                        // escapes with arguments are too much trouble, and the rest are classes, anchors or back references
+                        if ("pPxuc0kN".indexOf(e) >= 0) return null;
+                    } else {
+                        if (depth == 0) run.append(e);
+                        endsRun = false;
+                    }
+                    break;
+                case '[':
+                    i = endOfClass(regex, i);
+                    if (i < 0) return null;
+                    break;
+                case '(':
+                    // inline flags might change the meaning of the rest
+                    if (regex.startsWith("(?", i) && i + 2 < regex.length() && ":=!<>".indexOf(regex.charAt(i + 2)) < 0) return null;
+                    depth++;
+                    break;
+                case ')':
+                    depth--;
+                    break;
+                case '|':
+                    if (depth > 0) break;
+                    if (run.length() > best.length()) best = run.toString();
+                    if (best.isEmpty()) return null;
+                    literals.add(best);
+                    best = "";
+                    run.setLength(0);
+                    break;
+                case '*':
+                case '?':
+                    // the last character might not be there at all
+                    if (depth == 0 && run.length() > 0) run.setLength(run.length() - 1);
+                    break;
+                case '{':
+                    int close = regex.indexOf('}', i);
+                    if (close < 0) return null;
+                    if (depth == 0 && run.length() > 0 && regex.charAt(i + 1) == '0') run.setLength(run.length() - 1);
+                    i = close;
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    break;
+                default:
+                    if (depth == 0) run.append(c);
+                    endsRun = false;
+            }
+            if (endsRun) {
+                if (run.length() > best.length()) best = run.toString();
+                run.setLength(0);
+            }
+        }
+        if (run.length() > best.length()) best = run.toString();
+        if (best.isEmpty()) return null;
+        literals.add(best);
+        return literals;
+    }
+
+    /**
+     * @return the position of the <code>]</code> that closes the class that starts at the specified position, or -1
+     */
+    private static int endOfClass(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '[') depth++;
+            else if (c == ']' && i > start + 1 && --depth == 0) return i;
+            else if (c == ']' && i == start + 1) continue;
+        }
+        return -1;
+    }
+
+    /**
+     * An Aho-Corasick automaton that finds which of many literals are in a text, in one pass.
+     * Transitions on ASCII characters are looked up in a table; anything else follows the failure links.
+     */
+    private static final class LiteralMatcher {
+        private static final int ASCII = 128;
+        private final int patternCount;
+        /** The next state for each state and ASCII character */
+        private final int[][] ascii;
+        /** The next state for each state and any other character, where the trie has one */
+        private final List<Map<Character, Integer>> other = new ArrayList<>();
+        private final int[] failure;
+        /** The patterns whose literals end at each state, including those found by following the failure links */
+        private final int[][] found;
+
+        LiteralMatcher(Map<String, List<Integer>> literals, int patternCount) {
+            this.patternCount = patternCount;
+            // build the trie
+            List<int[]> next = new ArrayList<>();
+            List<List<Integer>> outputs = new ArrayList<>();
+            next.add(new int[ASCII]);
+            other.add(new HashMap<>());
+            outputs.add(new ArrayList<>());
+            literals.forEach((literal, patterns) -> {
+                int state = 0;
+                for (char c : literal.toCharArray()) {
+                    int target = c < ASCII ? next.get(state)[c] : other.get(state).getOrDefault(c, 0);
+                    if (target == 0) {
+                        target = next.size();
+                        next.add(new int[ASCII]);
+                        other.add(new HashMap<>());
+                        outputs.add(new ArrayList<>());
+                        if (c < ASCII) next.get(state)[c] = target;
+                        else other.get(state).put(c, target);
+                    }
+                    state = target;
+                }
+                outputs.get(state).addAll(patterns);
+            });
+            this.ascii = next.toArray(new int[0][]);
+            this.failure = new int[ascii.length];
+            // work out the failure links breadth first, turning the ASCII transitions into those of a DFA as we go
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ASCII; c++) if (ascii[0][c] != 0) queue.add(ascii[0][c]);
+            other.get(0).values().forEach(queue::add);
+            while (!queue.isEmpty()) {
+                int state = queue.removeFirst();
+                outputs.get(state).addAll(outputs.get(failure[state]));
+                for (int c = 0; c < ASCII; c++) {
+                    int target = ascii[state][c];
+                    if (target == 0) {
+                        ascii[state][c] = ascii[failure[state]][c];
+                    } else {
+                        failure[target] = ascii[failure[state]][c];
+                        queue.add(target);
+                    }
+                }
+                for (Map.Entry<Character, Integer> edge : other.get(state).entrySet()) {
+                    failure[edge.getValue()] = step(failure[state], edge.getKey());
+                    queue.add(edge.getValue());
+                }
+            }
+            this.found = outputs.stream().map(list -> list.stream().mapToInt(Integer::intValue).distinct().toArray()).toArray(int[][]::new);
+        }
+
+        private int step(int state, char c) {
+            if (c < ASCII) return ascii[state][c];
+            for (;;) {
+                Integer target = other.get(state).get(c);
+                if (target != null) return target;
+                if (state == 0) return 0;
+                state = failure[state];
+            }
+        }
+
+        boolean[] candidates(CharSequence text) {
+            boolean[] candidates = new boolean[patternCount];
+            if (ascii.length == 1) return candidates;
+            int state = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                state = c < ASCII ? ascii[state][c] : step(state, c);
+                for (int pattern : found[state]) candidates[pattern] = true;
+            }
+            return candidates;
+        }
+    }
+}
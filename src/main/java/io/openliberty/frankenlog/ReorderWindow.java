@@ -0,0 +1,175 @@
+package io.openliberty.frankenlog;
+
+import picocli.CommandLine.ITypeConverter;
+import picocli.CommandLine.TypeConversionException;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+
+/**
+ * How far out of time order the stanzas of one log file may be, e.g. because trace was written by many threads,
+ * so that they can be put back in order as they are read, without sorting the whole file.
+ * The window is either a time, e.g. <code>250ms</code>, or a number of stanzas, e.g. <code>100</code>.
+ * <p>
+ * Stanzas are held in a heap keyed on their times.
+ * With a time window, a stanza is let go once a stanza has been read from more than the window's time after it.
+ * With a number of stanzas, the earliest is let go whenever the heap holds more than that.
+ * Either way, stanzas with the same time come out in the order they were read,
+ * and a stanza read too late to be put in order is let go as soon as it is the earliest held.
+ */
+final class ReorderWindow {
+    /** How long to wait for an earlier stanza, or -1 for a number of stanzas */
+    final long nanos;
+    /** How many stanzas to hold, or -1 for a time */
+    final int stanzas;
+
+    private ReorderWindow(long nanos, int stanzas) {
+        this.nanos = nanos;
+        this.stanzas = stanzas;
+    }
+
+    static ReorderWindow ofMillis(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("A reorder window cannot be negative: " + millis + "ms");
+        return new ReorderWindow(millis * 1_000_000L, -1);
+    }
+
+    static ReorderWindow ofStanzas(int stanzas) {
+        if (stanzas < 0) throw new IllegalArgumentException("A reorder window cannot be negative: " + stanzas);
+        return new ReorderWindow(-1, stanzas);
+    }
+
+    static class Converter implements ITypeConverter<ReorderWindow> {
+        public ReorderWindow convert(String value) {
+            try {
+                return value.endsWith("ms")
+                        ? ofMillis(Long.parseLong(value.substring(0, value.length() - 2).trim()))
+                        : ofStanzas(Integer.parseInt(value.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new TypeConversionException("'" + value + "' is neither a time in milliseconds, e.g. 250ms, nor a number of stanzas, e.g. 100");
+            }
+        }
+    }
+
+    static Stream<Stanza> reorder(Stream<Stanza> stanzas, ReorderWindow window) {
+        if (window == null) return stanzas;
+        return StreamSupport.stream(window.new Reordering(stanzas.spliterator()), false).onClose(stanzas::close);
+    }
+
+    @Override
+    public String toString() {
+        return nanos >= 0 ? nanos / 1_000_000L + "ms" : stanzas + " stanzas";
+    }
+
+    /**
+     * A spliterator that holds stanzas in a binary min-heap until the window lets them go.
+     * The heap's keys are kept in arrays of primitives: each stanza's time, and the order it was read in to break ties.
+     */
+    private final class Reordering implements Spliterator<Stanza> {
+        private final Spliterator<Stanza> source;
+        private long[] times = new long[16];
+        private long[] sequence = new long[16];
+        private Stanza[] heap = new Stanza[16];
+        private int size;
+        private long read;
+        /** The latest time read so far */
+        private long latest = NO_TIMESTAMP;
+        private boolean ended;
+
+        Reordering(Spliterator<Stanza> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Stanza> action) {
+            while (!ended && !ready()) {
+                if (!source.tryAdvance(this::push)) ended = true;
+            }
+            if (size == 0) return false;
+            action.accept(pop());
+            return true;
+        }
+
+        /**
+         * @return whether the earliest stanza held can be let go
+         */
+        private boolean ready() {
+            if (size == 0) return false;
+            if (nanos < 0) return size > stanzas;
+            // the preamble has no time, and nothing can come before it
+            return times[0] == NO_TIMESTAMP || latest - times[0] > nanos;
+        }
+
+        private void push(Stanza stanza) {
+            if (size == heap.length) {
+                times = Arrays.copyOf(times, 2 * size);
+                sequence = Arrays.copyOf(sequence, 2 * size);
+                heap = Arrays.copyOf(heap, 2 * size);
+            }
+            long time = stanza.getEpochNanos();
+            if (time > latest) latest = time;
+            int i = size++;
+            // sift up
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!earlier(time, read, times[parent], sequence[parent])) break;
+                move(parent, i);
+                i = parent;
+            }
+            times[i] = time;
+            sequence[i] = read++;
+            heap[i] = stanza;
+        }
+
+        private Stanza pop() {
+            Stanza earliest = heap[0];
+            int last = --size;
+            long time = times[last], seq = sequence[last];
+            Stanza stanza = heap[last];
+            heap[last] = null;
+            // sift down
+            int i = 0;
+            for (int child = 1; child < size; child = 2 * i + 1) {
+                if (child + 1 < size && earlier(times[child + 1], sequence[child + 1], times[child], sequence[child])) child++;
+                if (!earlier(times[child], sequence[child], time, seq)) break;
+                move(child, i);
+                i = child;
+            }
+            if (size > 0) {
+                times[i] = time;
+                sequence[i] = seq;
+                heap[i] = stanza;
+            }
+            return earliest;
+        }
+
+        private boolean earlier(long time, long seq, long otherTime, long otherSeq) {
+            return time < otherTime || time == otherTime && seq < otherSeq;
+        }
+
+        private void move(int from, int to) {
+            times[to] = times[from];
+            sequence[to] = sequence[from];
+            heap[to] = heap[from];
+        }
+
+        @Override
+        public Spliterator<Stanza> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+    }
+}
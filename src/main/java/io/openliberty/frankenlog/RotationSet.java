@@ -0,0 +1,236 @@
+package io.openliberty.frankenlog;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+
+/**
+ * A log together with the files it was rotated into, e.g. <code>trace.log</code> and <code>trace_22.10.17_15.57.32.0.log</code>,
+ * read as one log under one short name.
+ * The set is found by a glob, e.g. <code>logs/trace*.log</code>, or by looking for the logs in a directory.
+ * <p>
+ * The files are put in the order of the first time stamp in each, and read one after another,
+ * each being opened only when the one before it has been read and closed,
+ * so however many files there are, only one is open at once.
+ * Each rotated file starts with its own preamble, but only the first one read is kept.
+ */
+final class RotationSet extends LogFile {
+    private static final Pattern GLOB = Pattern.compile("[*?\\[{]");
+    /** A log as Liberty names it, e.g. <code>messages.log</code>, or once it has been rotated, e.g. <code>messages_22.10.17_15.57.32.0.log</code> */
+    private static final Pattern ROTATED = Pattern.compile("(.+?)(_\\d{2}\\.\\d{2}\\.\\d{2}_\\d{2}\\.\\d{2}\\.\\d{2}(\\.\\d+)?)?\\.log(\\.gz)?", Pattern.CASE_INSENSITIVE);
+
+    private final List<Path> paths;
+    /** The files, in the order of their first time stamps, found when they are first needed */
+    private volatile List<LogFile> members;
+    /** The first time stamp in each file, or {@link Long#MAX_VALUE} if there is none */
+    private long[] firstTimes;
+
+    private RotationSet(String name, TimestampFormat format, List<Path> paths) {
+        super(name, format);
+        this.paths = paths;
+    }
+
+    private RotationSet(String name, TimestampFormat format, List<Path> paths, int ordinal) {
+        super(name, format, ordinal);
+        this.paths = paths;
+    }
+
+    static boolean isGlob(String filename) {
+        return !filename.contains(ENTRY_SEPARATOR) && GLOB.matcher(filename).find();
+    }
+
+    /**
+     * @param glob the files to read as one log, all in one directory, e.g. <code>logs/trace*.log</code>
+     */
+    static RotationSet ofGlob(String glob, TimestampFormat format) {
+        Path pattern = Paths.get(glob);
+        Path dir = pattern.getParent() == null ? Paths.get(".") : pattern.getParent();
+        if (isGlob(dir.toString())) throw new IllegalArgumentException("Only the file names in " + glob + " can be a glob, not the directory");
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, pattern.getFileName().toString())) {
+            for (Path file : files) if (Files.isRegularFile(file)) paths.add(file);
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+        if (paths.isEmpty()) throw new IllegalArgumentException("No files match " + glob);
+        return new RotationSet(glob, format, paths);
+    }
+
+    /**
+     * Find the logs in a directory, each together with the files it was rotated into.
+     *
+     * @return a log file for each log that was never rotated, and a rotation set for each one that was, in order of their names
+     */
+    static List<LogFile> inDirectory(Path dir, TimestampFormat format) {
+        Map<String, List<Path>> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Matcher m = ROTATED.matcher(file.getFileName().toString());
+                if (m.matches() && Files.isRegularFile(file)) logs.computeIfAbsent(m.group(1), name -> new ArrayList<>()).add(file);
+            }
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+        List<LogFile> found = new ArrayList<>();
+        logs.forEach((name, paths) -> found.add(paths.size() == 1
+                ? new LogFile(paths.get(0).toString(), format)
+                : new RotationSet(dir.resolve(name + "*.log").toString(), format, paths)));
+        return found;
+    }
+
+    @Override
+    List<LogFile> members() {
+        List<LogFile> sorted = members;
+        if (sorted == null) {
+            synchronized (this) {
+                if (members == null) sort();
+                sorted = members;
+            }
+        }
+        return sorted;
+    }
+
+    private void sort() {
+        // every file is sampled to find its first time stamp, so sample them all at once
+        List<LogFile> files = paths.stream().map(path -> new LogFile(path.toString(), format, this)).collect(Collectors.toList());
+        Map<LogFile, Long> times = files.parallelStream().collect(Collectors.toMap(Function.identity(), RotationSet::firstTime));
+        files.sort(Comparator.<LogFile>comparingLong(times::get).thenComparing(lf -> lf.filename));
+        firstTimes = files.stream().mapToLong(times::get).toArray();
+        members = List.copyOf(files);
+    }
+
+    private static long firstTime(LogFile lf) {
+        TimestampParser parser = new TimestampParser(lf.getFormat());
+        for (String timeStamp : lf.sampleTimeStamps()) {
+            long time = parser.parse(timeStamp);
+            if (time != NO_TIMESTAMP) return time;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    LogFile numbered(int ordinal) {
+        return new RotationSet(filename, format, paths, ordinal);
+    }
+
+    @Override
+    boolean isPlainFile() {
+        return false;
+    }
+
+    @Override
+    TimestampFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    boolean isJson() {
+        return false;
+    }
+
+    @Override
+    Stream<Stanza> stream() {
+        return stream(Long.MIN_VALUE, Long.MAX_VALUE, LogFile::stream);
+    }
+
+    @Override
+    Stream<Stanza> stream(long offset) {
+        if (offset != 0) throw new IllegalArgumentException("A rotation set can only be read from the start, not from " + offset);
+        return stream();
+    }
+
+    /**
+     * Read the files that may have stanzas in a window of time, leaving out any that end before it or start after it.
+     * A file is taken to end where the next one starts.
+     *
+     * @param open opens each file when it is reached, e.g. at the start of the window
+     */
+    Stream<Stanza> stream(long sinceNanos, long untilNanos, Function<LogFile, Stream<Stanza>> open) {
+        List<LogFile> files = members();
+        List<LogFile> inWindow = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (firstTimes[i] > untilNanos) break;
+            if (i + 1 < files.size() && firstTimes[i + 1] < sinceNanos) continue;
+            inWindow.add(files.get(i));
+        }
+        Concatenation stanzas = new Concatenation(inWindow.iterator(), open);
+        return StreamSupport.stream(stanzas, false).onClose(stanzas::close);
+    }
+
+    /**
+     * The stanzas of one file after another, each file being opened when it is reached and closed when it has been read.
+     */
+    private static final class Concatenation implements Spliterator<Stanza>, AutoCloseable {
+        private final Iterator<LogFile> files;
+        private final Function<LogFile, Stream<Stanza>> open;
+        private Stream<Stanza> current;
+        private Spliterator<Stanza> stanzas;
+        private boolean opened;
+
+        Concatenation(Iterator<LogFile> files, Function<LogFile, Stream<Stanza>> open) {
+            this.files = files;
+            this.open = open;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Stanza> action) {
+            while (true) {
+                if (current == null) {
+                    if (!files.hasNext()) return false;
+                    current = open.apply(files.next());
+                    // keep the preamble of the first file only
+                    if (opened) current = current.filter(stanza -> !stanza.isPreamble());
+                    opened = true;
+                    stanzas = current.spliterator();
+                }
+                if (stanzas.tryAdvance(action)) return true;
+                close();
+            }
+        }
+
+        @Override
+        public Spliterator<Stanza> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        @Override
+        public void close() {
+            if (current == null) return;
+            try {
+                current.close();
+            } finally {
+                current = null;
+                stanzas = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package io.openliberty.frankenlog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A merge of more log files than can be open at once.
+ * The files are merged a group at a time, each group into a temporary sorted run,
+ * and the runs are merged in the same way until there are few enough to merge as they are read.
+ * No more than the maximum number of files and runs are ever open at once, counting the run being written.
+ * <p>
+ * A run holds each stanza's time, its number of lines, which file it came from, and its time stamp and text.
+ * The groups are taken in order, and ties go to the earlier input at every level,
+ * so the stanzas come out in the same order as from merging all the files at once.
+ */
+final class SortedRuns {
+    /** The fewest files that can be open at once: two inputs and a run being written */
+    static final int MIN_OPEN_FILES = 3;
+    /** Marks the end of a run, where the index of the next stanza's file would be */
+    private static final int END = -1;
+
+    /** The files the stanzas came from, numbered in the order they were first written to a run */
+    private final List<LogFile> logFiles = new ArrayList<>();
+    private final Map<LogFile, Integer> indexes = new IdentityHashMap<>();
+    private final int bufferSize;
+    /** Every run written so far, to be deleted if the merge fails */
+    private final List<Path> written = new ArrayList<>();
+
+    private SortedRuns(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Merge log files, through temporary runs if there are more than can be open at once.
+     *
+     * @param logFiles     the files to merge
+     * @param maxOpenFiles the most files to have open at once, at least {@link #MIN_OPEN_FILES}
+     * @param bufferSize   the size of the buffer for reading or writing each run
+     * @param mergeFiles   merges some of the files as they are read, closing them when its stream is closed
+     * @return the merged stanzas, which must be closed to close the files or delete the runs still being read
+     */
+    static Stream<Stanza> merge(List<LogFile> logFiles, int maxOpenFiles, int bufferSize, Function<List<LogFile>, Stream<Stanza>> mergeFiles) {
+        if (maxOpenFiles < MIN_OPEN_FILES) throw new IllegalArgumentException("At least " + MIN_OPEN_FILES + " files must be open at once, not " + maxOpenFiles);
+        if (logFiles.size() <= maxOpenFiles) return mergeFiles.apply(logFiles);
+        SortedRuns runs = new SortedRuns(bufferSize);
+        // leave room for the run being written
+        int fanIn = maxOpenFiles - 1;
+        List<Path> paths = new ArrayList<>();
+        try {
+            for (List<LogFile> group : groups(logFiles, fanIn)) {
+                try (Stream<Stanza> stanzas = mergeFiles.apply(group)) {
+                    paths.add(runs.write(stanzas));
+                }
+            }
+            while (paths.size() > maxOpenFiles) {
+                List<Path> merged = new ArrayList<>();
+                for (List<Path> group : groups(paths, fanIn)) {
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    try (Stream<Stanza> stanzas = runs.read(group)) {
+                        merged.add(runs.write(stanzas));
+                    }
+                }
+                paths = merged;
+            }
+            return runs.read(paths);
+        } catch (RuntimeException | Error e) {
+            // any run that was read has been deleted already
+            for (Path path : runs.written) delete(path);
+            throw e;
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    private static <T> List<List<T>> groups(List<T> list, int size) {
+        List<List<T>> groups = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) groups.add(list.subList(i, Math.min(i + size, list.size())));
+        return groups;
+    }
+
+    private Path write(Stream<Stanza> stanzas) {
+        try {
+            Path path = Files.createTempFile("lol-run", ".tmp");
+            written.add(path);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), bufferSize))) {
+                for (Iterator<Stanza> iterator = stanzas.iterator(); iterator.hasNext(); ) {
+                    Stanza stanza = iterator.next();
+                    out.writeInt(index(stanza.getLogFile()));
+                    out.writeLong(stanza.getEpochNanos());
+                    out.writeInt(stanza.getLines());
+                    writeString(out, stanza.getUnformattedTime());
+                    writeString(out, stanza.getText());
+                }
+                out.writeInt(END);
+            }
+            return path;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * @return the number of the file in the runs, which is not always one of the files merged, e.g. for a {@link RotationSet}
+     */
+    private int index(LogFile lf) {
+        return indexes.computeIfAbsent(lf, f -> {
+            logFiles.add(f);
+            return logFiles.size() - 1;
+        });
+    }
+
+    /**
+     * @return the merged stanzas from some runs, each of which is deleted when it has been read or the stream is closed
+     */
+    private Stream<Stanza> read(List<Path> paths) {
+        List<Run> runs = new ArrayList<>();
+        try {
+            for (Path path : paths) runs.add(new Run(path));
+        } catch (RuntimeException | Error e) {
+            runs.forEach(Run::close);
+            throw e;
+        }
+        Stream<Stream<Stanza>> streams = runs.stream()
+                .map(run -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(run, Spliterator.ORDERED | Spliterator.NONNULL), false));
+        return MergeUtil.merge(streams, Stanza::getEpochNanos).onClose(() -> runs.forEach(Run::close));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * The stanzas of one run, read a stanza ahead, and closed as soon as the last one has been read.
+     */
+    private final class Run implements Iterator<Stanza>, AutoCloseable {
+        private final Path path;
+        private DataInputStream in;
+        private Stanza next;
+
+        Run(Path path) {
+            this.path = path;
+            try {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path, READ, DELETE_ON_CLOSE), bufferSize));
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) return true;
+            if (in == null) return false;
+            try {
+                int index = in.readInt();
+                if (index == END) {
+                    close();
+                    return false;
+                }
+                long time = in.readLong();
+                int lines = in.readInt();
+                next = new RunStanza(logFiles.get(index), lines, time, readString(in), readString(in));
+                return true;
+            } catch (IOException e) {
+                throw new IOError(e);
+            }
+        }
+
+        @Override
+        public Stanza next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Stanza stanza = next;
+            next = null;
+            return stanza;
+        }
+
+        @Override
+        public void close() {
+            if (in == null) return;
+            try {
+                in.close();
+                // in case the file system would not delete it on closing
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                throw new IOError(e);
+            } finally {
+                in = null;
+            }
+        }
+    }
+
+    /**
+     * A stanza read back from a run, with its text as it was written rather than split into lines.
+     */
+    private static final class RunStanza extends Stanza {
+        private final String text;
+
+        RunStanza(LogFile logFile, int lines, long time, String unformattedTime, String text) {
+            super(logFile, lines, time, unformattedTime);
+            this.text = text;
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+    }
+}
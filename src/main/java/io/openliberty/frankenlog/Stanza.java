@@ -13,24 +13,26 @@
 package io.openliberty.frankenlog;
 
 import java.time.Instant;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+import static io.openliberty.frankenlog.TimestampParser.toInstant;
 import static picocli.CommandLine.Help.Ansi.Style.fg_red;
 
-public class Stanza implements AutoCloseable, Comparable<Stanza> {
+public class Stanza implements Comparable<Stanza> {
 
-    private final LogReader reader;
+    private final LogFile logFile;
     private final String text;
     private final String unformattedTime;
-    private final Instant time;
+    /** The time in nanoseconds since the epoch, or {@link TimestampParser#NO_TIMESTAMP} for the preamble */
+    private final long time;
     private final int lines;
 
-    Stanza(LogReader reader, List<String> text, Instant time, String unformattedTime) {
-        this.reader = reader;
+    Stanza(LogFile logFile, List<String> text, long time, String unformattedTime) {
+        this.logFile = logFile;
         Objects.requireNonNull(text);
         this.text = String.join("\n", text);
         this.time = time;
@@ -38,39 +40,53 @@ public class Stanza implements AutoCloseable, Comparable<Stanza> {
         this.lines = text.size();
     }
 
-    public boolean isPreamble() {
-        return Instant.MIN.equals(time);
-    }
-
-    public Stanza next() {
-        return reader.next();
+    /**
+     * For subclasses that supply their text lazily by overriding {@link #getText()} and {@link #getUnformattedTime()}.
+     */
+    Stanza(LogFile logFile, int lines, long time, String unformattedTime) {
+        this.logFile = logFile;
+        this.text = null;
+        this.time = time;
+        this.unformattedTime = unformattedTime;
+        this.lines = lines;
     }
 
-    @Override
-    public void close() {
-        reader.close();
+    public boolean isPreamble() {
+        return time == NO_TIMESTAMP;
     }
 
     @Override
     public int compareTo(Stanza that) {
-        return Comparator.comparing(Stanza::getTime).thenComparing(Stanza::getShortname).compare(this, that);
+        int cmp = Long.compare(this.time, that.time);
+        return cmp != 0 ? cmp : Integer.compare(this.getLogFile().ordinal, that.getLogFile().ordinal);
     }
 
     public String getText() {
         return text;
     }
 
+    LogFile getLogFile() {
+        return logFile;
+    }
+
     public String getShortname() {
-        return reader.logFile.shortname;
+        return getLogFile().shortname;
     }
 
     public String getDisplayText() {
         return isPreamble() ?
-                String.format("\n%s\n%s", reader.logFile.shortname, getText()) :
-                reader.logFile.formatter.format(this.getTime()) + this.getText();
+                String.format("\n%s\n%s", getLogFile().shortname, getText()) :
+                getLogFile().formatter.format(this.getTime()) + this.getText();
     }
 
     public Instant getTime() {
+        return isPreamble() ? Instant.MIN : toInstant(time);
+    }
+
+    /**
+     * @return the time in nanoseconds since the epoch, or {@link TimestampParser#NO_TIMESTAMP} for the preamble
+     */
+    public long getEpochNanos() {
         return time;
     }
 
@@ -83,13 +99,13 @@ public class Stanza implements AutoCloseable, Comparable<Stanza> {
     }
 
     boolean matches(Pattern pattern) {
-        return pattern.matcher(text).find();
+        return pattern.matcher(getText()).find();
     }
 
     public CharSequence match(Pattern pattern) {
-        StringBuilder s = new StringBuilder(unformattedTime).append(" ");
+        StringBuilder s = new StringBuilder(getUnformattedTime()).append(" ");
         //See if the regex pattern exists in this stanza
-        Matcher m = pattern.matcher(text);
+        Matcher m = pattern.matcher(getText());
         //For each instance found of the pattern, append to stringbuilder "text" but replace the pattern with the same pattern but change the colour to red.
         //The text appended to s will stop at the end of the pattern matches found
         while (m.find()) m.appendReplacement(s, fg_red.on() + m.group() + fg_red.off());
@@ -100,6 +116,6 @@ public class Stanza implements AutoCloseable, Comparable<Stanza> {
 
     @Override
     public String toString() {
-        return unformattedTime + " " + text;
+        return getUnformattedTime() + " " + getText();
     }
 }
\ No newline at end of file
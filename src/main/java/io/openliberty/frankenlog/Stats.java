@@ -0,0 +1,164 @@
+package io.openliberty.frankenlog;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * What was read and where the time went, for <code>--stats</code>, printed to the standard error at the end.
+ * <p>
+ * Nothing is counted unless asked for, and even then the hot paths stay cheap:
+ * readers count in fields of their own and add them up here when they finish,
+ * the totals are {@link LongAdder}s so threads do not contend for them,
+ * and only one in every {@link #SAMPLE} operations is timed, with the time scaled up to stand for the rest.
+ * The times are added up across threads, so with several threads they can come to more than the elapsed time,
+ * and when there are more threads than CPUs they include the time each thread spent waiting for one.
+ */
+final class Stats {
+    enum Phase {
+        READING, PARSING, MERGING, MATCHING, OUTPUT
+    }
+
+    /** Time one operation in this many, which must be a power of two */
+    static final int SAMPLE = 64;
+
+    static boolean enabled;
+    private static long startNanos;
+    private static final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private static final Map<LogFile, FileCounts> files = new ConcurrentHashMap<>();
+    /** How many stanzas were left out by <code>--dedup</code> */
+    static final LongAdder duplicates = new LongAdder();
+
+    static {
+        for (Phase phase : Phase.values()) phaseNanos.put(phase, new LongAdder());
+    }
+
+    static final class FileCounts {
+        final LongAdder bytes = new LongAdder();
+        final LongAdder lines = new LongAdder();
+        final LongAdder stanzas = new LongAdder();
+        final LongAdder continuationLines = new LongAdder();
+        final LongAdder parseFailures = new LongAdder();
+    }
+
+    private Stats() {}
+
+    static void enable() {
+        startNanos = System.nanoTime();
+        enabled = true;
+    }
+
+    /**
+     * Forget everything counted so far, and stop counting.
+     */
+    static void reset() {
+        enabled = false;
+        files.clear();
+        duplicates.reset();
+        phaseNanos.values().forEach(LongAdder::reset);
+    }
+
+    static FileCounts of(LogFile lf) {
+        return files.computeIfAbsent(lf, f -> new FileCounts());
+    }
+
+    /**
+     * Start timing something that happens too seldom to need sampling.
+     *
+     * @return the time now, or 0 if nothing is being timed
+     */
+    static long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish timing something that was started with {@link #now()}.
+     */
+    static void time(Phase phase, long start) {
+        if (start != 0) phaseNanos.get(phase).add(System.nanoTime() - start);
+    }
+
+    /**
+     * Start timing an operation, if it is one of the ones sampled.
+     * Each caller counts its own operations, so that threads share nothing until they add up the time.
+     *
+     * @param tick how many operations the caller has started, including this one
+     * @return the time now, or 0 if the operation is not to be timed
+     */
+    static long start(int tick) {
+        return enabled && (tick & (SAMPLE - 1)) == 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish timing an operation that was started with {@link #start(int)}.
+     *
+     * @return the time now, from which to time whatever comes next as part of the same operation, or 0 if it is not being timed
+     */
+    static long stop(Phase phase, long start) {
+        if (start == 0) return 0;
+        long now = System.nanoTime();
+        phaseNanos.get(phase).add((now - start) * SAMPLE);
+        return now;
+    }
+
+    /**
+     * @return a stream that counts the bytes read from it as read from the specified file
+     */
+    static InputStream counting(LogFile lf, InputStream in) {
+        LongAdder bytes = of(lf).bytes;
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) bytes.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) bytes.add(n);
+                return n;
+            }
+        };
+    }
+
+    static void print(PrintStream out) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long stanzas = 0;
+        List<Map.Entry<LogFile, FileCounts>> sorted = files.entrySet().stream()
+                .sorted(Comparator.comparingInt(e -> e.getKey().ordinal))
+                .collect(Collectors.toList());
+        for (Map.Entry<LogFile, FileCounts> e : sorted) {
+            FileCounts counts = e.getValue();
+            out.printf(Locale.ROOT, "%s %s: %,d bytes, %,d lines, %,d stanzas, %,d continuation lines, %,d parse failures%n",
+                    e.getKey().shortname, e.getKey().filename, counts.bytes.sum(), counts.lines.sum(), counts.stanzas.sum(),
+                    counts.continuationLines.sum(), counts.parseFailures.sum());
+            stanzas += counts.stanzas.sum();
+        }
+        out.printf(Locale.ROOT, "%,d stanzas in %.3fs, %,d stanzas/s%n", stanzas, seconds, (long) (stanzas / seconds));
+        if (duplicates.sum() > 0) out.printf(Locale.ROOT, "%,d duplicate stanzas left out%n", duplicates.sum());
+        StringBuilder phases = new StringBuilder("Time, added up across threads:");
+        phaseNanos.forEach((phase, nanos) -> phases.append(String.format(Locale.ROOT, " %s %.3fs", phase.name().toLowerCase(Locale.ROOT), nanos.sum() / 1e9)));
+        out.println(phases);
+        // the pools peak at different times, so their peaks added up can only say how high the heap got at most
+        long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getPeakUsage)
+                .mapToLong(usage -> usage == null ? 0 : usage.getUsed())
+                .sum();
+        out.printf(Locale.ROOT, "Peak heap, at most: %,d MB, adding up the peak of each heap pool%n", peakHeap >> 20);
+    }
+}
@@ -0,0 +1,143 @@
+package io.openliberty.frankenlog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+/**
+ * A reader that follows a plain log file as it grows, like <code>tail -f</code>.
+ * Each {@link #poll(Consumer)} reads only what has been appended since the last one, up to a limit,
+ * and hands on the stanzas that are now complete.
+ * The last stanza is complete once the next one starts, or once the file has been quiet for a while,
+ * so the last entry before a file goes quiet is not held back.
+ * Lines added to a stanza after that, as when a stack trace is written slowly, come out as a stanza of their own.
+ * <p>
+ * If the file shrinks, or another file takes its name as when a log is rolled over,
+ * the rest of the old file is read and then the new file is read from the beginning.
+ * A file that does not exist yet is followed from when it appears.
+ */
+class TailingLogReader extends LogReader {
+    private static final int BUFFER_SIZE = 64 << 10;
+    /** How much to read at most on each poll, so that following a large file from the start does not read it all at once */
+    static final long MAX_READ_PER_POLL = 4 << 20;
+
+    private final Path path;
+    private final Charset charset = Charset.defaultCharset();
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /** The start of a line that has not been finished yet */
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private long lastGrowth = System.nanoTime();
+
+    TailingLogReader(LogFile lf, long offset) {
+        super(lf, null);
+        this.path = Paths.get(lf.filename);
+        this.position = offset;
+    }
+
+    /**
+     * Read what has been appended since the last poll, up to {@link #MAX_READ_PER_POLL} bytes.
+     *
+     * @param completed gets each stanza that has been finished
+     * @return whether anything was read
+     */
+    boolean poll(Consumer<Stanza> completed) {
+        try {
+            boolean grew = channel != null && readAppended(completed);
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // rolling over, so keep the old file until the new one appears
+                return grew;
+            }
+            boolean replaced = channel != null && fileKey != null && !fileKey.equals(attributes.fileKey());
+            if (channel == null || replaced || attributes.size() < position) {
+                if (channel != null) {
+                    if (partialLine.size() > 0) finishLine(completed);
+                    Stanza last = flush();
+                    if (last != null) completed.accept(last);
+                    channel.close();
+                    position = 0;
+                }
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                fileKey = attributes.fileKey();
+                grew |= readAppended(completed);
+            }
+            if (grew) lastGrowth = System.nanoTime();
+            return grew;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    private boolean readAppended(Consumer<Stanza> completed) throws IOException {
+        long read = 0;
+        for (int n; read < MAX_READ_PER_POLL && (n = channel.read(buffer.clear(), position)) > 0; ) {
+            read += n;
+            position += n;
+            byte[] bytes = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] != '\n') continue;
+                partialLine.write(bytes, lineStart, i - lineStart);
+                finishLine(completed);
+                lineStart = i + 1;
+            }
+            partialLine.write(bytes, lineStart, n - lineStart);
+        }
+        // a followed log is never finished with, so count as it goes
+        addStats(read);
+        return read > 0;
+    }
+
+    private void finishLine(Consumer<Stanza> completed) {
+        String line = partialLine.toString(charset);
+        partialLine.reset();
+        Stanza stanza = add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+        if (stanza != null) completed.accept(stanza);
+    }
+
+    /**
+     * Hand on the last stanza if nothing has been appended for a while.
+     * A line that has not been finished is left until it is.
+     */
+    void flushIfQuiet(long nowNanos, long quietNanos, Consumer<Stanza> completed) {
+        if (nowNanos - lastGrowth < quietNanos) return;
+        Stanza stanza = flush();
+        if (stanza != null) completed.accept(stanza);
+    }
+
+    /**
+     * @return when something was last read, on the {@link System#nanoTime()} clock
+     */
+    long getLastGrowth() {
+        return lastGrowth;
+    }
+
+    @Override
+    public void close() {
+        finish();
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            throw new IOError(e);
+        } finally {
+            channel = null;
+        }
+    }
+}
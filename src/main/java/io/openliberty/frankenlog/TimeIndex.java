@@ -0,0 +1,191 @@
+package io.openliberty.frankenlog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+
+/**
+ * A sparse index of the times in a plain log file, kept in a sidecar file next to it, e.g. <code>trace.log.lolidx</code>.
+ * For the first stanza after every {@link #INTERVAL} bytes, it records the stanza's offset
+ * and the latest time of any stanza before it.
+ * Because the times are the latest so far, seeking to an entry never skips a stanza that belongs in a window,
+ * even when the log is not quite in time order.
+ * <p>
+ * The index remembers the size and modification time of the log, and a checksum of its first few bytes.
+ * If the log has only grown since the index was written, the index is extended by reading just the new part.
+ * Otherwise it is rebuilt.
+ */
+final class TimeIndex {
+    static final String SUFFIX = ".lolidx";
+    static final long INTERVAL = 1 << 20;
+    private static final int MAGIC = 0x4C4F4C49;
+    private static final int VERSION = 1;
+    private static final int HEAD_LENGTH = 4096;
+
+    private long size;
+    private long modified;
+    private int headLength;
+    private long headChecksum;
+    private int count;
+    private long[] offsets = new long[16];
+    private long[] times = new long[16];
+
+    private TimeIndex() {}
+
+    static boolean supports(LogFile lf) {
+        return MappedLogReader.supports(lf);
+    }
+
+    static Path sidecar(LogFile lf) {
+        return Paths.get(lf.filename + SUFFIX);
+    }
+
+    /**
+     * Load the index for a log file, building it or bringing it up to date first if necessary.
+     * If the sidecar file cannot be written, the index is still returned.
+     */
+    static TimeIndex forFile(LogFile lf) {
+        return forFile(lf, true);
+    }
+
+    /**
+     * Load the index for a log file if it has one, bringing it up to date first if the log has only grown.
+     *
+     * @return the index, or null if there is no index that can be used without reading the whole log
+     */
+    static TimeIndex ifPresent(LogFile lf) {
+        return forFile(lf, false);
+    }
+
+    private static TimeIndex forFile(LogFile lf, boolean build) {
+        Path log = Paths.get(lf.filename);
+        try {
+            long size = Files.size(log);
+            long modified = Files.getLastModifiedTime(log).toMillis();
+            TimeIndex index = load(sidecar(lf));
+            if (index != null && index.size == size && index.modified == modified) return index;
+            if (index == null || index.size > size || index.headChecksum != checksum(log, index.headLength)) {
+                if (!build) return null;
+                index = new TimeIndex();
+                index.add(0, NO_TIMESTAMP);
+                index.headLength = (int) Math.min(HEAD_LENGTH, size);
+                index.headChecksum = checksum(log, index.headLength);
+            }
+            index.scan(lf, size);
+            index.size = size;
+            index.modified = modified;
+            index.save(sidecar(lf));
+            return index;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * @return the offset of the last indexed stanza that has nothing at or after the specified time before it
+     */
+    long offsetBefore(long epochNanos) {
+        int lo = 0, hi = count - 1;
+        // the times are never decreasing, and the first one is NO_TIMESTAMP
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (times[mid] < epochNanos) lo = mid;
+            else hi = mid - 1;
+        }
+        return offsets[lo];
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Read the stanzas from the last entry up to the specified size, adding an entry for each interval.
+     */
+    private void scan(LogFile lf, long end) {
+        long latest = times[count - 1];
+        long nextEntry = (offsets[count - 1] / INTERVAL + 1) * INTERVAL;
+        try (MappedLogReader reader = new MappedLogReader(lf, MappedLogReader.DEFAULT_WINDOW_SIZE, offsets[count - 1], end)) {
+            for (Stanza stanza = reader.next(); stanza != null; stanza = reader.next()) {
+                long offset = reader.getLastStanzaOffset();
+                if (offset >= nextEntry) {
+                    add(offset, latest);
+                    nextEntry = (offset / INTERVAL + 1) * INTERVAL;
+                }
+                if (!stanza.isPreamble()) latest = Math.max(latest, stanza.getEpochNanos());
+            }
+        }
+    }
+
+    private void add(long offset, long time) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * count);
+            times = Arrays.copyOf(times, 2 * count);
+        }
+        offsets[count] = offset;
+        times[count] = time;
+        count++;
+    }
+
+    private static long checksum(Path log, int length) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            while (head.hasRemaining() && channel.read(head) >= 0);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.flip());
+        return crc.getValue();
+    }
+
+    private static TimeIndex load(Path sidecar) {
+        if (!Files.isRegularFile(sidecar)) return null;
+        try (InputStream file = Files.newInputStream(sidecar);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            TimeIndex index = new TimeIndex();
+            index.size = in.readLong();
+            index.modified = in.readLong();
+            index.headLength = in.readInt();
+            index.headChecksum = in.readLong();
+            int count = in.readInt();
+            if (count < 1) return null;
+            for (int i = 0; i < count; i++) index.add(in.readLong(), in.readLong());
+            return index;
+        } catch (IOException e) {
+            // a damaged index is no worse than a missing one
+            return null;
+        }
+    }
+
+    private void save(Path sidecar) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeInt(headLength);
+            out.writeLong(headChecksum);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+                out.writeLong(times[i]);
+            }
+        } catch (IOException ignored) {
+            // the log may be somewhere read-only, in which case the index will be built again next time
+        }
+    }
+}
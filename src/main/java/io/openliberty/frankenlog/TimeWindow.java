@@ -0,0 +1,90 @@
+package io.openliberty.frankenlog;
+
+import picocli.CommandLine.ITypeConverter;
+import picocli.CommandLine.Option;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static io.openliberty.frankenlog.TimestampParser.toEpochNanos;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The options that restrict a command to the stanzas inside a window of time.
+ * Reading starts close to the beginning of the window instead of at the start of the file.
+ * Where a log file has an up-to-date {@link TimeIndex}, the index says where to start.
+ * Otherwise the file is bisected, which takes a few dozen small reads even for a very large log.
+ */
+class TimeWindow {
+    /** How far apart the bisection stops, which is also about how much is read before the window starts */
+    static final int BISECT_WINDOW_SIZE = 64 << 10;
+    /** How late a stanza may be logged and still be found by bisection, since it assumes the file is in time order */
+    static final long BISECT_TOLERANCE_NANOS = 1_000_000_000L;
+
+    @Option(names = "--since", paramLabel = "time", converter = InstantConverter.class, description = "Only read stanzas at or after this time, e.g. 2022-10-17T15:57:32Z, or 2022-10-17T15:57:32 in the local time zone")
+    Instant since;
+
+    @Option(names = "--until", paramLabel = "time", converter = InstantConverter.class, description = "Stop reading at the first stanza after this time")
+    Instant until;
+
+    static class InstantConverter implements ITypeConverter<Instant> {
+        public Instant convert(String value) {
+            try {
+                return OffsetDateTime.parse(value).toInstant();
+            } catch (DateTimeParseException e) {
+                return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+            }
+        }
+    }
+
+    static Stream<Stanza> stream(LogFile lf, TimeWindow window) {
+        return window == null ? lf.stream() : window.stream(lf);
+    }
+
+    /**
+     * Open several log files, finding where to start reading in all of them at once before any stanzas are read.
+     */
+    static List<Stream<Stanza>> streams(List<LogFile> logFiles, TimeWindow window) {
+        if (window == null) return logFiles.stream().map(LogFile::stream).collect(toList());
+        List<Long> offsets = logFiles.parallelStream().map(window::startOffset).collect(toList());
+        return IntStream.range(0, logFiles.size()).mapToObj(i -> window.streamFrom(logFiles.get(i), offsets.get(i))).collect(toList());
+    }
+
+    Stream<Stanza> stream(LogFile lf) {
+        return streamFrom(lf, startOffset(lf));
+    }
+
+    /**
+     * @return where to start reading a log file so that no stanza in the window is missed
+     */
+    long startOffset(LogFile lf) {
+        if (since == null || !TimeIndex.supports(lf)) return 0;
+        long sinceNanos = toEpochNanos(since);
+        TimeIndex index = TimeIndex.ifPresent(lf);
+        if (index != null) return index.offsetBefore(sinceNanos);
+        try (MappedLogReader reader = new MappedLogReader(lf, BISECT_WINDOW_SIZE)) {
+            return reader.bisect(sinceNanos - BISECT_TOLERANCE_NANOS);
+        }
+    }
+
+    private Stream<Stanza> streamFrom(LogFile lf, long offset) {
+        if (since == null && until == null) return lf.stream();
+        final long sinceNanos = since == null ? Long.MIN_VALUE : toEpochNanos(since);
+        final long untilNanos = until == null ? Long.MAX_VALUE : toEpochNanos(until);
+        if (lf instanceof RotationSet) {
+            // find where to start in each file of the set only when it is reached
+            long fromNanos = since == null ? Long.MIN_VALUE : sinceNanos - BISECT_TOLERANCE_NANOS;
+            return ((RotationSet) lf).stream(fromNanos, untilNanos, this::stream);
+        }
+        return lf.stream(offset)
+                // the preamble only belongs in a window that goes back to the start of the file
+                .filter(stanza -> stanza.isPreamble() ? since == null : stanza.getEpochNanos() >= sinceNanos)
+                .takeWhile(stanza -> stanza.isPreamble() || stanza.getEpochNanos() <= untilNanos);
+    }
+}
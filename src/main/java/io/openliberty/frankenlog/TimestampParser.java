@@ -0,0 +1,215 @@
+package io.openliberty.frankenlog;
+
+import io.openliberty.frankenlog.LogFile.TimestampFormat;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+import static io.openliberty.frankenlog.LogFile.TimestampFormat.ISO;
+import static io.openliberty.frankenlog.LogFile.TimestampFormat.NONE;
+
+/**
+ * Parses the bracketed time stamps that start log lines, e.g. <code>[17/10/22 15:57:32:780 GMT]</code>
+ * or <code>[2022-10-17T15:57:32.780+0000]</code>, into nanoseconds since the epoch.
+ * Anything that does not look like a time stamp is rejected by a cheap check on its shape,
+ * and {@link #NO_TIMESTAMP} is returned instead of throwing an exception.
+ * Time stamps that pass the shape check but not the fast path are handed to the
+ * {@link TimestampFormat}'s formatter, so the results always agree with {@link TimestampFormat#parse(String)}.
+ * <p>
+ * This class caches the epoch-day of the last date and the rules for the last zone it saw,
+ * so each reader should have its own instance.
+ */
+final class TimestampParser {
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    /** The length of [yyyy-MM-ddTHH:mm:ss.SSS+hhmm] */
+    private static final int ISO_LENGTH = 30;
+
+    private final TimestampFormat format;
+
+    // the last date seen, packed as yyyymmdd, and its epoch-day
+    private int lastDate = -1;
+    private long lastEpochDay;
+
+    // the last zone text seen, and what it means
+    private String lastZoneText;
+    private TimestampFormat lastZoneFormat;
+    private ZoneId lastZone;
+
+    // the offset of the last zone on the last epoch-day, if it does not change during that day
+    private long offsetEpochDay = Long.MIN_VALUE;
+    private ZoneId offsetZone;
+    private int offsetSeconds;
+
+    TimestampParser(TimestampFormat format) {
+        this.format = format;
+    }
+
+    static Instant toInstant(long epochNanos) {
+        return Instant.ofEpochSecond(0, epochNanos);
+    }
+
+    static long toEpochNanos(Instant instant) {
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    long parse(CharSequence s) {
+        return parse(s, 0, s.length());
+    }
+
+    /**
+     * @param s     the characters containing the time stamp
+     * @param start the index of the opening bracket
+     * @param end   the index after the closing bracket
+     * @return the time in nanoseconds since the epoch, or {@link #NO_TIMESTAMP}
+     */
+    long parse(CharSequence s, int start, int end) {
+        // every layout starts with a bracket and two digits
+        if (end - start < 3 || s.charAt(start) != '[' || !isDigit(s.charAt(start + 1))) return NO_TIMESTAMP;
+        if ((format == ISO || format == NONE) && TimestampFormat.isIso(s.subSequence(start, Math.min(end, start + 6)))) return parseIso(s, start, end);
+        // [dd/dd/dd[,] H[H]:mm:ss:SSS zone]
+        int p = start + 1;
+        int a = twoDigits(s, p, end);
+        int b = twoDigits(s, p + 3, end);
+        int c = twoDigits(s, p + 6, end);
+        if (a < 0 || b < 0 || c < 0 || s.charAt(p + 2) != '/' || s.charAt(p + 5) != '/') return parseSlowly(s, start, end);
+        p += 8;
+        if (p < end && s.charAt(p) == ',') p++;
+        if (p >= end || s.charAt(p++) != ' ') return parseSlowly(s, start, end);
+        int hour = digit(s, p, end);
+        if (hour < 0) return parseSlowly(s, start, end);
+        p++;
+        if (p < end && isDigit(s.charAt(p))) hour = hour * 10 + digit(s, p++, end);
+        int minute = twoDigits(s, p + 1, end);
+        int second = twoDigits(s, p + 4, end);
+        int millis = threeDigits(s, p + 7, end);
+        if (minute < 0 || second < 0 || millis < 0
+                || s.charAt(p) != ':' || s.charAt(p + 3) != ':' || s.charAt(p + 6) != ':'
+                || p + 10 >= end || s.charAt(p + 10) != ' ' || s.charAt(end - 1) != ']') return parseSlowly(s, start, end);
+        int zoneStart = p + 11, zoneEnd = end - 1;
+        if (zoneStart == zoneEnd) return parseSlowly(s, start, end);
+        for (int i = zoneStart; i < zoneEnd; i++) if (!isLetter(s.charAt(i))) return parseSlowly(s, start, end);
+
+        if (!zoneMatches(s, zoneStart, zoneEnd)) {
+            lastZoneText = s.subSequence(zoneStart, zoneEnd).toString();
+            lastZoneFormat = format == NONE ? TimestampFormat.guessTimeStamp(lastZoneText) : format;
+            lastZone = lastZoneFormat.zoneFor(lastZoneText);
+        }
+        // an unknown zone would not parse with the formatter either
+        if (lastZone == null) return NO_TIMESTAMP;
+
+        final int year, month, day;
+        switch (lastZoneFormat) {
+            case DMY: day = a; month = b; year = c; break;
+            case MDY: month = a; day = b; year = c; break;
+            case YMD: year = a; month = b; day = c; break;
+            default: throw new IllegalStateException();
+        }
+        // leave anything out of the ordinary to the formatter's resolver
+        if (month < 1 || month > 12 || day < 1 || hour > 23 || minute > 59 || second > 59) return parseSlowly(s, start, end);
+        if (day > 28 && day > LocalDate.of(2000 + year, month, 1).lengthOfMonth()) return parseSlowly(s, start, end);
+
+        long epochDay = epochDay(2000 + year, month, day);
+        int secondOfDay = (hour * 60 + minute) * 60 + second;
+        if (!hasFixedOffset(epochDay)) {
+            try {
+                return toEpochNanos(LocalDate.ofEpochDay(epochDay).atTime(hour, minute, second, millis * 1_000_000).atZone(lastZone).toInstant());
+            } catch (DateTimeException e) {
+                return NO_TIMESTAMP;
+            }
+        }
+        return (epochDay * SECONDS_PER_DAY + secondOfDay - offsetSeconds) * NANOS_PER_SECOND + millis * 1_000_000L;
+    }
+
+    /**
+     * [yyyy-MM-ddTHH:mm:ss.SSS+hhmm], where the offset says all there is to know about the zone
+     */
+    private long parseIso(CharSequence s, int start, int end) {
+        if (end - start != ISO_LENGTH) return parseSlowly(s, start, end);
+        int p = start + 1;
+        int century = twoDigits(s, p, end), year = twoDigits(s, p + 2, end), month = twoDigits(s, p + 5, end), day = twoDigits(s, p + 8, end);
+        int hour = twoDigits(s, p + 11, end), minute = twoDigits(s, p + 14, end), second = twoDigits(s, p + 17, end), millis = threeDigits(s, p + 20, end);
+        int offsetHours = twoDigits(s, p + 24, end), offsetMinutes = twoDigits(s, p + 26, end);
+        char sign = s.charAt(p + 23);
+        if (century < 0 || year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0 || offsetHours < 0 || offsetMinutes < 0
+                || s.charAt(p + 4) != '-' || s.charAt(p + 7) != '-' || s.charAt(p + 10) != 'T' || s.charAt(p + 13) != ':' || s.charAt(p + 16) != ':'
+                || s.charAt(p + 19) != '.' || (sign != '+' && sign != '-') || s.charAt(end - 1) != ']') return parseSlowly(s, start, end);
+        year += century * 100;
+        if (month < 1 || month > 12 || day < 1 || hour > 23 || minute > 59 || second > 59 || offsetHours > 18 || offsetMinutes > 59) return parseSlowly(s, start, end);
+        if (day > 28 && day > LocalDate.of(year, month, 1).lengthOfMonth()) return parseSlowly(s, start, end);
+        int offset = (offsetHours * 60 + offsetMinutes) * 60 * (sign == '-' ? -1 : 1);
+        int secondOfDay = (hour * 60 + minute) * 60 + second;
+        return (epochDay(year, month, day) * SECONDS_PER_DAY + secondOfDay - offset) * NANOS_PER_SECOND + millis * 1_000_000L;
+    }
+
+    private long parseSlowly(CharSequence s, int start, int end) {
+        try {
+            return toEpochNanos(format.parse(s.subSequence(start, end).toString()));
+        } catch (DateTimeException e) {
+            return NO_TIMESTAMP;
+        }
+    }
+
+    private boolean zoneMatches(CharSequence s, int start, int end) {
+        if (lastZoneText == null || lastZoneText.length() != end - start) return false;
+        for (int i = start; i < end; i++) if (s.charAt(i) != lastZoneText.charAt(i - start)) return false;
+        return true;
+    }
+
+    private long epochDay(int year, int month, int day) {
+        int date = (year * 100 + month) * 100 + day;
+        if (date != lastDate) {
+            lastEpochDay = LocalDate.of(year, month, day).toEpochDay();
+            lastDate = date;
+        }
+        return lastEpochDay;
+    }
+
+    /**
+     * Work out whether the last zone has the same offset for every local time on the specified day,
+     * and if so, cache that offset.
+     */
+    private boolean hasFixedOffset(long epochDay) {
+        if (epochDay == offsetEpochDay && lastZone == offsetZone) return true;
+        ZoneRules rules = lastZone.getRules();
+        long midday = epochDay * SECONDS_PER_DAY + SECONDS_PER_DAY / 2;
+        if (!rules.isFixedOffset()) {
+            // offsets are at most 18 hours either way, so a clear day and a half either side is enough
+            ZoneOffsetTransition next = rules.nextTransition(Instant.ofEpochSecond(midday - 2 * SECONDS_PER_DAY));
+            if (next != null && next.toEpochSecond() < midday + 2 * SECONDS_PER_DAY) return false;
+        }
+        offsetSeconds = rules.getOffset(Instant.ofEpochSecond(midday)).getTotalSeconds();
+        offsetEpochDay = epochDay;
+        offsetZone = lastZone;
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static int digit(CharSequence s, int i, int end) {
+        if (i >= end) return -1;
+        char c = s.charAt(i);
+        return isDigit(c) ? c - '0' : -1;
+    }
+
+    private static int twoDigits(CharSequence s, int i, int end) {
+        int d1 = digit(s, i, end), d2 = digit(s, i + 1, end);
+        return d1 < 0 || d2 < 0 ? -1 : d1 * 10 + d2;
+    }
+
+    private static int threeDigits(CharSequence s, int i, int end) {
+        int d1 = twoDigits(s, i, end), d2 = digit(s, i + 2, end);
+        return d1 < 0 || d2 < 0 ? -1 : d1 * 10 + d2;
+    }
+}
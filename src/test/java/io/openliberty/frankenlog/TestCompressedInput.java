@@ -0,0 +1,124 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestCompressedInput {
+    static final String[] LOGS = {"server1.log", "server2.log", "client.log"};
+    @TempDir
+    static Path dir;
+    static File gz, zip;
+
+    @BeforeAll
+    static void createArchives() throws Exception {
+        gz = dir.resolve("server1.log.gz").toFile();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gz))) {
+            Files.copy(resource("server1.log"), out);
+        }
+        zip = dir.resolve("dump.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("logs/"));
+            for (String log : LOGS) {
+                out.putNextEntry(new ZipEntry("logs/" + log));
+                Files.copy(resource(log), out);
+            }
+            out.putNextEntry(new ZipEntry("server.xml"));
+            out.write("<server/>".getBytes());
+            out.putNextEntry(new ZipEntry("logs/messages.log.gz"));
+            GZIPOutputStream gzipped = new GZIPOutputStream(out);
+            Files.copy(resource("server2.log"), gzipped);
+            gzipped.finish();
+        }
+    }
+
+    static Path resource(String name) {
+        try {
+            return Paths.get(TestCompressedInput.class.getResource("/" + name).toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static List<String> read(LogFile lf) {
+        try (Stream<Stanza> stanzas = lf.stream()) {
+            return stanzas.map(Stanza::toString).collect(toList());
+        }
+    }
+
+    static List<String> read(String resource) {
+        return read(new LogFile(resource(resource).toString()));
+    }
+
+    @Test
+    void testGzippedFile() throws Exception {
+        LogFile lf = new LogFile(gz.getPath());
+        assertFalse(lf.isPlainFile());
+        assertEquals(read("server1.log"), read(lf));
+    }
+
+    @Test
+    void testArchiveEntries() throws Exception {
+        List<LogFile> entries = LogFile.expand(List.of(new LogFile(zip.getPath())));
+        assertEquals(Stream.of("logs/server1.log", "logs/server2.log", "logs/client.log", "logs/messages.log.gz").map(e -> zip.getPath() + "!" + e).collect(toList()),
+                entries.stream().map(lf -> lf.filename).collect(toList()));
+        // the archive itself is not read, so takes no name
+        assertEquals(List.of("AA", "BB", "CC", "DD"), entries.stream().map(lf -> lf.shortname).collect(toList()));
+        assertEquals(read("server2.log"), read(new LogFile(zip.getPath() + "!logs/server2.log")));
+        assertEquals(read("server2.log"), read(entries.get(3)));
+    }
+
+    @Test
+    void testMergingArchiveEntriesMatchesMergingFiles() throws Exception {
+        List<Stream<Stanza>> files = Stream.of(LOGS).map(log -> new LogFile(resource(log).toString()).stream()).collect(toList());
+        List<Stream<Stanza>> entries = Stream.of(LOGS).map(log -> new LogFile(zip.getPath() + "!logs/" + log).stream()).collect(toList());
+        assertEquals(MergeUtil.merge(files.stream(), Stanza::getEpochNanos).map(Stanza::toString).collect(toList()),
+                MergeUtil.mergeReadingAhead(entries.stream(), Stanza::getEpochNanos, 4, 2).map(Stanza::toString).collect(toList()));
+    }
+
+    @Test
+    void testStandardInput() throws Exception {
+        InputStream stdin = System.in;
+        boolean[] closed = {false};
+        try (InputStream in = new FileInputStream(resource("client.log").toFile()) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        }) {
+            System.setIn(in);
+            assertEquals(read("client.log"), read(new LogFile(LogFile.STDIN)));
+            assertFalse(closed[0], "the standard input was closed");
+        } finally {
+            System.setIn(stdin);
+        }
+    }
+
+    @Test
+    void testMissingEntry() {
+        assertThrows(IOError.class, () -> read(new LogFile(zip.getPath() + "!logs/nonesuch.log")));
+    }
+}
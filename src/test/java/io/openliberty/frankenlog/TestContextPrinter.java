@@ -0,0 +1,88 @@
+package io.openliberty.frankenlog;
+
+import io.openliberty.frankenlog.GrepCommand.ContextPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestContextPrinter {
+    static final LogFile LOG = new LogFile("context.log");
+
+    static Stanza stanza(int i) {
+        String time = String.format("[01/03/19 10:%02d:%02d:000 GMT]", i / 60 % 60, i % 60);
+        return new Stanza(LOG, List.of(time + " stanza " + i, "\tcaf\u00e9 " + "x".repeat(i % 100)), i, time);
+    }
+
+    @Test
+    void testQueueDropsTheOldest() {
+        FifoFixedSizeQueue<Integer> queue = new FifoFixedSizeQueue<>(3);
+        for (int i = 1; i <= 3; i++) assertNull(queue.push(i));
+        assertEquals(Integer.valueOf(1), queue.push(4));
+        assertEquals(Integer.valueOf(2), queue.poll());
+        queue.add(5);
+        queue.add(6);
+        assertEquals(List.of(4, 5, 6), new ArrayList<>(queue));
+        assertEquals(Integer.valueOf(5), queue.get(1));
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+        assertEquals(Integer.valueOf(7), new FifoFixedSizeQueue<Integer>(0).push(7));
+    }
+
+    @Test
+    void testSpilledStanzasReadBack() {
+        try (ContextSpill spill = new ContextSpill()) {
+            List<Stanza> spilled = new ArrayList<>();
+            // let go of some at first, so that the file wraps around, then keep enough to make it grow
+            int count = 3 * ContextSpill.INITIAL_CAPACITY / 100;
+            for (int i = 0; i < count; i++) {
+                spilled.add(spill.spill(stanza(i)));
+                if (i % 1000 == 999 && i < count / 2) spill.release(spilled.get(i - 500));
+            }
+            for (Stanza s : spilled.subList(count / 2, count)) {
+                Stanza original = stanza((int) s.getEpochNanos());
+                assertEquals(original.toString(), s.toString());
+                assertEquals(original.getLines(), s.getLines());
+            }
+        }
+    }
+
+    static List<String> print(GrepCommand.ContextOption option, boolean spill, List<Integer> matches) {
+        List<String> printed = new ArrayList<>();
+        try (ContextPrinter context = ContextPrinter.of(option, s -> printed.add("- " + s), spill)) {
+            for (int i = 0; i < 200; i++) {
+                Stanza stanza = stanza(i);
+                context.peek(stanza);
+                if (matches.contains(i)) {
+                    context.match(stanza);
+                    printed.add("+ " + stanza);
+                }
+            }
+            context.printRemaining();
+        }
+        return printed;
+    }
+
+    @Test
+    void testSpillingDoesNotChangeTheContext() {
+        List<Integer> matches = IntStream.of(3, 5, 40, 41, 90, 198).boxed().collect(Collectors.toList());
+        for (int num : new int[]{0, 2, 30}) {
+            GrepCommand.ContextOption before = new GrepCommand.ContextOption(), after = new GrepCommand.ContextOption(), both = new GrepCommand.ContextOption();
+            before.before = num;
+            after.after = num;
+            both.context = num;
+            for (GrepCommand.ContextOption option : List.of(before, after, both))
+                assertEquals(print(option, false, matches), print(option, true, matches));
+        }
+        GrepCommand.ContextOption before = new GrepCommand.ContextOption();
+        before.before = 2;
+        assertEquals(List.of("- " + stanza(1), "- " + stanza(2), "+ " + stanza(3), "- " + stanza(4), "+ " + stanza(5)),
+                print(before, true, matches).subList(0, 5));
+    }
+}
@@ -0,0 +1,90 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static io.openliberty.frankenlog.TestCompressedInput.resource;
+import static io.openliberty.frankenlog.TestStanza.stanza;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static test.model.Stanzas.describe;
+
+public class TestDedup {
+    @Test
+    void testSameTimeAndText() {
+        Dedup dedup = new Dedup();
+        assertTrue(dedup.isFirst(stanza(1, "a")));
+        assertFalse(dedup.isFirst(stanza(1, "a")));
+        assertTrue(dedup.isFirst(stanza(1, "b")));
+        assertTrue(dedup.isFirst(stanza(2, "a")));
+        assertFalse(dedup.isFirst(stanza(1, "b")));
+    }
+
+    @Test
+    void testForgetsBehindTheHorizon() {
+        Dedup dedup = new Dedup(10, 16);
+        assertTrue(dedup.isFirst(stanza(0, "a")));
+        assertTrue(dedup.isFirst(stanza(10, "b")));
+        assertFalse(dedup.isFirst(stanza(0, "a")));
+        assertTrue(dedup.isFirst(stanza(11, "c")));
+        assertTrue(dedup.isFirst(stanza(0, "a")));
+    }
+
+    @ParameterizedTest(name = "remember up to {0} stanzas")
+    @ValueSource(ints = {1, 2, 8, 64})
+    void testSameAsASetOfTheLatest(int capacity) {
+        // keys that collide in the table, and are removed in every order, must still be found
+        Random random = new Random(capacity);
+        Dedup dedup = new Dedup(Long.MAX_VALUE, capacity);
+        Deque<String> latest = new ArrayDeque<>();
+        Set<String> remembered = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            String text = Integer.toString(random.nextInt(3 * capacity));
+            boolean expected = remembered.add(text);
+            if (expected) {
+                latest.add(text);
+                if (latest.size() > capacity) remembered.remove(latest.remove());
+            }
+            assertEquals(expected, dedup.isFirst(stanza(0, text)), text);
+        }
+    }
+
+    @Test
+    void testLogCollectedTwice() {
+        LogFile lf = new LogFile(resource("server1.log").toString());
+        List<String> once;
+        try (Stream<Stanza> stanzas = lf.stream()) {
+            once = describe(stanzas.filter(new Dedup()::isFirst));
+        }
+        LogFile copy = new LogFile(resource("server1.log").toString());
+        try (Stream<Stanza> first = lf.stream(); Stream<Stanza> second = copy.stream()) {
+            Stream<Stanza> merged = MergeUtil.merge(Stream.of(first, second), Stanza::getEpochNanos);
+            assertEquals(once, describe(merged.filter(new Dedup()::isFirst)));
+        }
+    }
+
+    @Test
+    void testOverlappingRotatedLogs() {
+        List<Stanza> all;
+        try (Stream<Stanza> stanzas = new LogFile(resource("server2.log").toString()).stream()) {
+            all = stanzas.collect(Collectors.toList());
+        }
+        List<String> expected = describe(all.stream().filter(new Dedup()::isFirst));
+        // the older log runs on past where the newer one starts
+        List<Stanza> older = all.subList(0, 2 * all.size() / 3);
+        List<Stanza> newer = all.subList(all.size() / 3, all.size());
+        Stream<Stanza> merged = MergeUtil.merge(Stream.of(older.stream(), newer.stream()), Stanza::getEpochNanos);
+        assertEquals(expected, describe(merged.filter(new Dedup()::isFirst)));
+    }
+}
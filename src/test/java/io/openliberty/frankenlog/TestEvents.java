@@ -0,0 +1,64 @@
+package io.openliberty.frankenlog;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static io.openliberty.frankenlog.TestCompressedInput.resource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class TestEvents {
+    static final Path LOG = resource("server1.log");
+    static final Path SETTINGS = Paths.get("src/main/jfr/lol.jfc");
+
+    @Test
+    void testDisabledByDefault() {
+        assertFalse(new Events.FileOpen().isEnabled());
+        assertFalse(new Events.MergeStall().isEnabled());
+        assertFalse(new Events.OutputFlush().isEnabled());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"stream", "mapped"})
+    void testFileOpenAndClose(String reader) throws Exception {
+        Path jfr = Files.createTempFile("lol", ".jfr");
+        try (Recording recording = new Recording(Configuration.create(SETTINGS))) {
+            recording.start();
+            LogFile lf = new LogFile(LOG.toString());
+            // the mapped reader reads each of the many small ranges with a reader of its own, but they are one stream of the file
+            try (Stream<Stanza> stanzas = reader.equals("mapped") ? mappedInSmallRanges(lf) : lf.stream()) {
+                assertEquals(693, stanzas.count());
+            }
+            recording.stop();
+            recording.dump(jfr);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+            assertEquals(1, events.stream().filter(e -> e.getEventType().getName().endsWith(".FileOpen")).count());
+            RecordedEvent close = events.stream()
+                    .filter(e -> e.getEventType().getName().endsWith(".FileClose"))
+                    .reduce((a, b) -> { throw new AssertionError("closed twice"); })
+                    .orElseThrow(() -> new AssertionError("never closed"));
+            assertEquals(LOG.toString(), close.getString("file"));
+            assertEquals(1303, close.getLong("lines"));
+            assertEquals(693, close.getLong("stanzas"));
+        } finally {
+            Files.deleteIfExists(jfr);
+        }
+    }
+
+    static Stream<Stanza> mappedInSmallRanges(LogFile lf) {
+        LogRangeSpliterator ranges = new LogRangeSpliterator(lf, 0, -1, 4 << 10, 4);
+        return StreamSupport.stream(ranges, false).onClose(ranges::close);
+    }
+}
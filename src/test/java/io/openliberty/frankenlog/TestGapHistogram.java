@@ -0,0 +1,48 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestGapHistogram {
+    @Test
+    void testBucketsCoverEveryGap() {
+        for (long nanos : new long[]{0, 1, 7, 8, 15, 16, 17, 1_000_000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = GapHistogram.bucket(nanos);
+            assertTrue(GapHistogram.lowestIn(bucket) <= nanos, "bucket of " + nanos + " starts after it");
+            assertTrue(bucket + 1 == GapHistogram.bucket(Long.MAX_VALUE) + 1 || nanos < GapHistogram.lowestIn(bucket + 1), "bucket of " + nanos + " ends before it");
+        }
+        for (int bucket = 1; bucket <= GapHistogram.bucket(Long.MAX_VALUE); bucket++)
+            assertEquals(bucket, GapHistogram.bucket(GapHistogram.lowestIn(bucket)));
+    }
+
+    @Test
+    void testPercentilesAreWithinAnEighth() {
+        GapHistogram histogram = new GapHistogram();
+        for (long millis = 1; millis <= 1000; millis++) histogram.record(millis * 1_000_000);
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000_000, histogram.getMax());
+        long p50 = histogram.percentile(50), p99 = histogram.percentile(99);
+        assertTrue(p50 >= 500_000_000 && p50 < 500_000_000L * 9 / 8, "p50 = " + p50);
+        assertTrue(p99 >= 990_000_000 && p99 <= 1_000_000_000, "p99 = " + p99);
+        assertEquals(1_000_000_000, histogram.percentile(100));
+    }
+
+    @Test
+    void testHistogramsAddUp() {
+        Random random = new Random(1);
+        GapHistogram all = new GapHistogram(), odd = new GapHistogram(), even = new GapHistogram();
+        for (int i = 0; i < 10_000; i++) {
+            long nanos = (long) Math.exp(random.nextDouble() * 30);
+            all.record(nanos);
+            (i % 2 == 0 ? even : odd).record(nanos);
+        }
+        GapHistogram sum = new GapHistogram().add(odd).add(even);
+        assertEquals(all.getCount(), sum.getCount());
+        assertEquals(all.getMax(), sum.getMax());
+        for (double percent : new double[]{1, 50, 90, 99, 99.9}) assertEquals(all.percentile(percent), sum.percentile(percent));
+    }
+}
@@ -0,0 +1,99 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static io.openliberty.frankenlog.TestCompressedInput.resource;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestJsonLog {
+    static final LogFile JSON = new LogFile(resource("server2.json").toString());
+    static final LogFile TEXT = new LogFile(resource("server1.log").toString());
+
+    @Test
+    void testFieldsAreLaidOutAsInATextLog() {
+        JsonLine json = new JsonLine();
+        assertTrue(json.parse("{ \"message\" : \"A \\\"quoted\\\" caf\\u00e9\\/bar\", \"ibm_threadId\":\"0000002a\", \"nested\":{\"message\":\"not this\",\"list\":[1,\"]\",{}]},"
+                + " \"loglevel\":\"WARNING\", \"ibm_datetime\":\"2019-03-01T15:57:38.110+0000\", \"module\":\"com.example.Thing\", \"count\":-1.5e3, \"ok\":true }"));
+        assertEquals("[2019-03-01T15:57:38.110+0000]", json.getTimeStamp());
+        assertEquals("0000002a com.example.Thing W A \"quoted\" caf\u00e9/bar", json.getText());
+
+        String accessLog = "{\"type\":\"liberty_accesslog\",\"ibm_uriPath\":\"\\/x\",\"ibm_datetime\":\"2019-03-01T15:57:39.080+0000\"}";
+        assertTrue(json.parse(accessLog));
+        assertEquals(accessLog, json.getText());
+    }
+
+    @Test
+    void testLinesThatOnlyLookLikeJson() {
+        JsonLine json = new JsonLine();
+        assertFalse(json.parse("{}"));
+        assertFalse(json.parse("{\"message\":\"no time stamp\"}"));
+        assertFalse(json.parse("{\"ibm_datetime\":\"2019-03-01T15:57:38.110+0000\""));
+        assertFalse(json.parse("{ibm_datetime: 2019-03-01T15:57:38.110+0000}"));
+        assertFalse(json.parse("{\"ibm_datetime\":\"2019-03-01T15:57:38.110+0000\" \"message\":\"missing comma\"}"));
+        assertFalse(json.parse("{\"ibm_datetime\":\"2019-03-01T15:57:38.110+0000\",\"message\":\"\\u12\"}"));
+        assertFalse(json.parse("{\"ibm_datetime\":\"2019-03-01T15:57:38.110+0000\",\"a\\uZZ\": 1}"));
+    }
+
+    @Test
+    void testContinuationLinesInATextLog() {
+        LogReader reader = new LogReader(new LogFile("-"), null);
+        assertEquals(null, reader.add("[01/03/19 15:57:32:780 GMT] 00000001 Payload I {"));
+        assertEquals(null, reader.add("{\"message\":\"not a stanza\"}"));
+        Stanza stanza = reader.add("{\"ibm_datetime\":\"2019-03-01T15:57:33.000+0000\",\"message\":\"a stanza\"}");
+        assertEquals(2, stanza.getLines());
+        assertEquals("00000001 Payload I {\n{\"message\":\"not a stanza\"}", stanza.getText());
+        assertEquals("[2019-03-01T15:57:33.000+0000] a stanza", reader.flush().toString());
+    }
+
+    @Test
+    void testJsonLogIsRecognised() {
+        assertTrue(JSON.isJson());
+        assertFalse(TEXT.isJson());
+        assertFalse(MappedLogReader.supports(JSON));
+        assertFalse(TimeIndex.supports(JSON));
+    }
+
+    @Test
+    void testStanzas() {
+        List<Stanza> stanzas;
+        try (Stream<Stanza> stream = JSON.stream()) {
+            stanzas = stream.collect(toList());
+        }
+        assertEquals(6, stanzas.size());
+        assertEquals("[2019-03-01T15:57:33.001+0000] 00000001 com.ibm.ws.kernel.launch.internal.FrameworkManager A CWWKE0001I: The server \"json\" has been launched.",
+                stanzas.get(1).toString());
+        assertEquals("0000002b com.ibm.ws.kernel.feature.internal.FeatureManager E CWWKE0701E: Caf\u00e9 failed to start.\n"
+                        + "java.lang.IllegalStateException: cafe\r\n\tat com.example.Cafe.start(Cafe.java:42)\r\n\tat com.example.Cafe.run(Cafe.java:7)",
+                stanzas.get(4).getText());
+        assertEquals(1, stanzas.get(4).getLines());
+        assertEquals(1551455859223L * 1_000_000, stanzas.get(4).getEpochNanos());
+    }
+
+    @Test
+    void testMergeWithTextLog() {
+        LogFile.useMappedReader = true;
+        List<Stanza> merged;
+        try (Stream<Stanza> stanzas = MergeUtil.merge(Stream.of(TEXT.stream(), JSON.stream()), Stanza::getEpochNanos)) {
+            merged = stanzas.collect(toList());
+        } finally {
+            LogFile.useMappedReader = false;
+        }
+        // the text log is not quite in order itself, so just look either side of each JSON stanza
+        for (int i = 1; i < merged.size() - 1; i++) {
+            if (merged.get(i).getLogFile() != JSON) continue;
+            assertTrue(merged.get(i - 1).getEpochNanos() <= merged.get(i).getEpochNanos(), "out of order at " + merged.get(i));
+            assertTrue(merged.get(i).getEpochNanos() <= merged.get(i + 1).getEpochNanos(), "out of order at " + merged.get(i));
+        }
+        List<String> fromJson = merged.stream().filter(s -> s.getLogFile() == JSON).map(Stanza::getUnformattedTime).collect(toList());
+        assertEquals(6, fromJson.size());
+        assertEquals("[2019-03-01T15:57:32.790+0000]", fromJson.get(0));
+        int first = merged.indexOf(merged.stream().filter(s -> s.getLogFile() == JSON).findFirst().orElseThrow());
+        assertEquals("[01/03/19 15:57:32:780 GMT]", merged.get(first - 1).getUnformattedTime());
+    }
+}
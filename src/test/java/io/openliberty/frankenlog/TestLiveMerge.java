@@ -0,0 +1,107 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestLiveMerge {
+    @TempDir
+    Path dir;
+
+    File createLog(String name) throws IOException {
+        return Files.createFile(dir.resolve(name + ".log")).toFile();
+    }
+
+    static void append(File log, String... lines) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(log, true))) {
+            for (String line : lines) out.println(line);
+        }
+    }
+
+    static String stanza(int seconds, String text) {
+        return String.format("[01/03/19 10:00:%02d:000 GMT] 00000001 Component I %s", seconds, text);
+    }
+
+    @Test
+    void testTailingCompletesStanzasAsTheyGrow() throws IOException, InterruptedException {
+        File log = createLog("TAILED");
+        append(log, "preamble", stanza(1, "one"), "\tcontinued");
+        List<String> completed = new ArrayList<>();
+        try (TailingLogReader tail = new TailingLogReader(new LogFile(log.getPath()), 0)) {
+            tail.poll(s -> completed.add(s.toString()));
+            assertEquals(List.of(" preamble"), completed);
+            append(log, "\tstill continued", stanza(2, "two"));
+            tail.poll(s -> completed.add(s.toString()));
+            assertEquals(2, completed.size());
+            assertEquals("[01/03/19 10:00:01:000 GMT] 00000001 Component I one\n\tcontinued\n\tstill continued", completed.get(1));
+            // the last stanza is held while the file may still be growing
+            tail.flushIfQuiet(System.nanoTime(), TimeUnit.SECONDS.toNanos(10), s -> completed.add(s.toString()));
+            assertEquals(2, completed.size());
+            Thread.sleep(100);
+            tail.poll(s -> completed.add(s.toString()));
+            tail.flushIfQuiet(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(50), s -> completed.add(s.toString()));
+            assertEquals(List.of("[01/03/19 10:00:02:000 GMT] 00000001 Component I two"), completed.subList(2, completed.size()));
+        }
+    }
+
+    @Test
+    void testFollowingGivesTheSameOrderAsMerging() throws IOException {
+        File a = createLog("FOLLOWED_A"), b = createLog("FOLLOWED_B");
+        append(a, stanza(1, "a1"), stanza(3, "a3"), stanza(3, "a3 again"));
+        append(b, stanza(2, "b2"), stanza(3, "b3"), "\tat b3", stanza(4, "b4"));
+        LogFile la = new LogFile(a.getPath()), lb = new LogFile(b.getPath());
+        List<String> merged;
+        try (Stream<Stanza> stanzas = MergeUtil.merge(Stream.of(la.stream(), lb.stream()), Stanza::getEpochNanos)) {
+            merged = stanzas.map(Stanza::toString).collect(toList());
+        }
+        // a stanza after the window ends each file, so following stops
+        append(a, stanza(9, "a9"));
+        append(b, stanza(9, "b9"));
+        TimeWindow window = new TimeWindow();
+        window.until = Instant.parse("2019-03-01T10:00:05Z");
+        try (Stream<Stanza> stanzas = LiveMerge.stream(List.of(la, lb), window, 60_000)) {
+            assertEquals(merged, stanzas.map(Stanza::toString).collect(toList()));
+        }
+    }
+
+    @Test
+    void testQuietFileDoesNotHoldUpTheOthersForever() throws IOException {
+        File busy = createLog("BUSY"), quiet = createLog("QUIET");
+        // the last stanza comes out once the busy file has been quiet for the lateness too
+        append(busy, stanza(1, "one"), stanza(2, "two"));
+        LogFile lb = new LogFile(busy.getPath()), lq = new LogFile(quiet.getPath());
+        try (Stream<Stanza> stanzas = LiveMerge.stream(List.of(lb, lq), null, 50)) {
+            assertEquals(List.of("one", "two"), stanzas.limit(2).map(s -> s.getText().substring(s.getText().lastIndexOf(' ') + 1)).collect(toList()));
+        }
+    }
+
+    @Test
+    void testBusyFileIsNotReadFarAheadOfAQuietOne() throws IOException {
+        File busy = createLog("BUSY"), quiet = createLog("QUIET");
+        // more than one poll's worth, so the busy file would be read to the end if nothing held it back
+        try (PrintWriter out = new PrintWriter(new FileWriter(busy))) {
+            for (int i = 1; i <= 100_000; i++) out.println(stanza(i % 60, "message " + i));
+        }
+        append(quiet, stanza(0, "still being written"));
+        LiveMerge merge = new LiveMerge(List.of(new LogFile(busy.getPath()), new LogFile(quiet.getPath())), null, 1000);
+        try (merge) {
+            assertTrue(merge.tryAdvance(s -> {}));
+            assertTrue(merge.queued() < 90_000, merge.queued() + " stanzas waiting");
+        }
+    }
+}
@@ -2,11 +2,17 @@ package io.openliberty.frankenlog;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static io.openliberty.frankenlog.MergeUtil.merge;
+import static io.openliberty.frankenlog.MergeUtil.mergeReadingAhead;
 import static test.util.Streams.list;
 
 public class TestMergeUtil {
@@ -40,5 +46,49 @@ public class TestMergeUtil {
         Assertions.assertEquals(list(stream), List.of(0, 1, 2, 3, 4, 5, 6, 7, 8));
     }
 
+    @Test
+    void testNoStreams(){
+        var stream = MergeUtil.<Integer>merge(Stream.empty());
+        Assertions.assertEquals(list(stream), List.of());
+    }
+
+    @Test
+    void testKeyedTiesComeOutInStreamOrder(){
+        var stream = merge(Stream.of(Stream.of("1a", "2a"), Stream.of("1b", "2b"), Stream.of("0c", "1c")), s -> s.charAt(0));
+        Assertions.assertEquals(list(stream), List.of("0c", "1a", "1b", "1c", "2a", "2b"));
+    }
+
+    @ParameterizedTest(name = "merge {0} streams")
+    @ValueSource(ints = {1, 2, 3, 5, 8, 13, 100, 257})
+    void testManyStreams(int count){
+        Random random = new Random(count);
+        List<List<Integer>> inputs = IntStream.range(0, count)
+                .mapToObj(i -> random.ints(random.nextInt(50), 0, 1000).sorted().boxed().collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        List<Integer> expected = inputs.stream().flatMap(List::stream).sorted().collect(Collectors.toList());
+        Assertions.assertEquals(list(merge(inputs.stream().<Stream<Integer>>map(List::stream))), expected);
+        Assertions.assertEquals(list(merge(inputs.stream().<Stream<Integer>>map(List::stream), Integer::longValue)), expected);
+    }
+
+    @Test
+    void testReadingAhead(){
+        var stream = mergeReadingAhead(Stream.of(Stream.of(0, 3, 6), Stream.of(2, 5, 8), Stream.of(1, 4, 7), Stream.empty()), Integer::longValue, 2, 1);
+        Assertions.assertEquals(list(stream), List.of(0, 1, 2, 3, 4, 5, 6, 7, 8));
+    }
+
+    @Test
+    void testReadingAheadManyStreams(){
+        List<Stream<Integer>> streams = IntStream.range(0, 100)
+                .mapToObj(i -> IntStream.range(0, 1000).map(n -> n * 100 + i).boxed())
+                .collect(Collectors.toList());
+        var stream = mergeReadingAhead(streams.stream(), Integer::longValue, 7, 3);
+        Assertions.assertEquals(list(stream), IntStream.range(0, 100_000).boxed().collect(Collectors.toList()));
+    }
 
+    @Test
+    void testReadingAheadPassesOnFailures(){
+        Stream<Integer> failing = Stream.of(1, 2, 3).map(i -> { if (i == 3) throw new IllegalArgumentException(); return i; });
+        var stream = mergeReadingAhead(Stream.of(failing, Stream.of(4, 5)), Integer::longValue, 1, 1);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> list(stream));
+    }
 }
@@ -0,0 +1,77 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestOutputSink {
+    @TempDir
+    Path dir;
+
+    static String print(OutputSink.Mode mode, Consumer<OutputSink> printing) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputSink out = new OutputSink(Channels.newChannel(bytes), mode)) {
+            printing.accept(out);
+        }
+        return new String(bytes.toByteArray(), Charset.defaultCharset());
+    }
+
+    static List<Stanza> read(LogFile lf) {
+        try (Stream<Stanza> stanzas = new MappedLogReader(lf).getStanzas()) {
+            return stanzas.collect(toList());
+        }
+    }
+
+    @Test
+    void testStanzasPrintAsDisplayText() throws Exception {
+        LogFile lf = new LogFile(Paths.get(TestOutputSink.class.getResource("/server1.log").toURI()).toString());
+        List<Stanza> stanzas = read(lf);
+        String expected = stanzas.stream().map(Stanza::getDisplayText).map(s -> s + "\n").collect(joining());
+        assertEquals(expected, print(OutputSink.Mode.ANSI, out -> stanzas.forEach(out::printStanza)));
+        assertEquals(expected, print(OutputSink.Mode.PLAIN, out -> stanzas.forEach(out::printStanza)));
+    }
+
+    @Test
+    void testRawModePrintsTheLog() throws Exception {
+        File log = new File(TestOutputSink.class.getResource("/server2.log").toURI());
+        List<Stanza> stanzas = read(new LogFile(log.getPath()));
+        String expected = String.join("\n", Files.readAllLines(log.toPath(), Charset.defaultCharset())) + "\n";
+        assertEquals(expected, print(OutputSink.Mode.RAW, out -> stanzas.forEach(out::printStanza)));
+    }
+
+    @Test
+    void testMatchesAreOnlyHighlightedInAnsiMode() throws IOException {
+        File log = dir.resolve("UNICODE.log").toFile();
+        Files.write(log.toPath(), "[01/03/19 10:00:01:000 GMT] 00000001 Component I caf\u00e9 \u2603 needle\r\n\tat somewhere\n".getBytes(Charset.defaultCharset()));
+        Stanza stanza = read(new LogFile(log.getPath())).get(0);
+        CharSequence highlighted = stanza.match(Pattern.compile("needle"));
+        assertEquals(highlighted + "\n", print(OutputSink.Mode.ANSI, out -> out.printMatch(stanza, highlighted)));
+        assertEquals(stanza + "\n", print(OutputSink.Mode.PLAIN, out -> out.printMatch(stanza, highlighted)));
+    }
+
+    @Test
+    void testOutputLargerThanTheBuffers() {
+        String line = Stream.generate(() -> "0123456789").limit(100).collect(joining());
+        int lines = 4 * OutputSink.BUFFERS * OutputSink.BUFFER_SIZE / line.length();
+        String printed = print(OutputSink.Mode.PLAIN, out -> {
+            for (int i = 0; i < lines; i++) out.println(line);
+        });
+        assertEquals(lines * (line.length() + 1), printed.length());
+    }
+}
@@ -0,0 +1,73 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static picocli.CommandLine.Help.Ansi.Style.fg_red;
+
+public class TestPatternSet {
+    static List<String> literals(String regex) {
+        return PatternSet.requiredLiterals(Pattern.compile(regex));
+    }
+
+    static PatternSet of(String... regexes) {
+        return new PatternSet(Arrays.stream(regexes).map(Pattern::compile).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testRequiredLiterals() {
+        assertEquals(List.of("CWWKF0011I"), literals("CWWKF0011I"));
+        assertEquals(List.of("CWWK"), literals("CWWK.*E"));
+        assertEquals(List.of(" started"), literals("^server \\d+ started"));
+        assertEquals(List.of("a.b"), literals("a\\.b"));
+        assertEquals(List.of("ERROR", "WARN"), literals("ERROR|WARN"));
+        assertEquals(List.of("colo"), literals("colou?r"));
+        assertEquals(List.of("x(y)"), literals("\\Qx(y)\\E"));
+        assertEquals(List.of("fail"), literals("(?:a|b)fail[0-9]*"));
+        assertEquals(List.of("ab"), literals("ab+c"));
+    }
+
+    @Test
+    void testPatternsWithoutLiteralsAreAlwaysRun() {
+        assertNull(literals(".*"));
+        assertNull(literals("\\d+"));
+        assertNull(literals("ERROR|\\w+"));
+        assertNull(literals("(?i)error"));
+        assertNull(PatternSet.requiredLiterals(Pattern.compile("error", Pattern.CASE_INSENSITIVE)));
+        assertNotNull(of("\\d+", "ERROR").find("code 42", false));
+    }
+
+    @Test
+    void testAnyPatternMatches() {
+        PatternSet patterns = of(IntStream.range(0, 300).mapToObj(i -> String.format("CWWK[A-Z]%04d[IWE]", i)).toArray(String[]::new));
+        assertNull(patterns.find("CWWKZ0001 nothing here CWWKF0300I", false));
+        assertNotNull(patterns.find("The server CWWKF0123I is ready", false));
+        assertNotNull(patterns.find("caf\u00e9 \u2603 CWWKE0299W", false));
+    }
+
+    @Test
+    void testMatchesOfAllPatternsAreHighlighted() {
+        PatternSet patterns = of("needle", "need", "hay");
+        int[] found = patterns.find("haystack with a needle", true);
+        assertArrayEquals(new int[]{0, 3, 16, 22}, found);
+        String red = fg_red.on(), off = fg_red.off();
+        assertEquals("[time] " + red + "hay" + off + "stack with a " + red + "needle" + off, PatternSet.highlight("[time]", "haystack with a needle", found).toString());
+    }
+
+    @Test
+    void testHighlightingIsTheSameAsForOnePattern() {
+        String text = "one $1 two \\ three one";
+        Pattern pattern = Pattern.compile("one|two");
+        String expected = "[time] " + pattern.matcher(text).replaceAll(m -> fg_red.on() + m.group() + fg_red.off());
+        assertEquals(expected, PatternSet.highlight("[time]", text, of("one|two").find(text, true)).toString());
+    }
+}
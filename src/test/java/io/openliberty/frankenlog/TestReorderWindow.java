@@ -0,0 +1,100 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import picocli.CommandLine.TypeConversionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static io.openliberty.frankenlog.TestStanza.stanza;
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestReorderWindow {
+    static final long MILLI = 1_000_000L;
+
+    static List<String> reorder(ReorderWindow window, Stanza... stanzas) {
+        return ReorderWindow.reorder(Stream.of(stanzas), window).map(Stanza::getText).collect(Collectors.toList());
+    }
+
+    @Test
+    void testTimeWindow() {
+        List<String> texts = reorder(ReorderWindow.ofMillis(10),
+                stanza(NO_TIMESTAMP, "preamble"),
+                stanza(5 * MILLI, "b"),
+                stanza(1 * MILLI, "a"),
+                stanza(20 * MILLI, "d"),
+                // too late to go before d, since d let c go
+                stanza(2 * MILLI, "c"),
+                stanza(30 * MILLI, "f"),
+                stanza(25 * MILLI, "e"));
+        assertEquals(List.of("preamble", "a", "b", "c", "d", "e", "f"), texts);
+    }
+
+    @Test
+    void testTooLateComesOutWhenEarliest() {
+        List<String> texts = reorder(ReorderWindow.ofMillis(1),
+                stanza(1 * MILLI, "a"),
+                stanza(10 * MILLI, "b"),
+                stanza(20 * MILLI, "c"),
+                stanza(2 * MILLI, "late"));
+        assertEquals(List.of("a", "b", "late", "c"), texts);
+    }
+
+    @Test
+    void testCountWindow() {
+        List<String> texts = reorder(ReorderWindow.ofStanzas(2),
+                stanza(3, "c"),
+                stanza(1, "a"),
+                stanza(2, "b"),
+                stanza(6, "f"),
+                stanza(4, "d"),
+                stanza(5, "e"));
+        assertEquals(List.of("a", "b", "c", "d", "e", "f"), texts);
+        assertEquals(List.of("c", "a", "b"), reorder(ReorderWindow.ofStanzas(0), stanza(3, "c"), stanza(1, "a"), stanza(2, "b")));
+    }
+
+    @Test
+    void testTiesComeOutInTheOrderRead() {
+        List<String> texts = reorder(ReorderWindow.ofMillis(100),
+                stanza(2, "x1"), stanza(1, "y"), stanza(2, "x2"), stanza(2, "x3"), stanza(1, "z"));
+        assertEquals(List.of("y", "z", "x1", "x2", "x3"), texts);
+    }
+
+    @ParameterizedTest(name = "shuffle within {0} stanzas")
+    @ValueSource(ints = {1, 2, 7, 64, 1000})
+    void testShuffledWithinTheWindow(int window) {
+        Random random = new Random(window);
+        List<Long> times = LongStream.range(0, 10_000).boxed().collect(Collectors.toList());
+        List<Long> shuffled = new ArrayList<>();
+        // shuffle each block of the window's size, so no stanza is more than the window out of place
+        for (int i = 0; i < times.size(); i += window) {
+            List<Long> block = new ArrayList<>(times.subList(i, Math.min(i + window, times.size())));
+            Collections.shuffle(block, random);
+            shuffled.addAll(block);
+        }
+        Stanza[] stanzas = shuffled.stream().map(t -> stanza(t, Long.toString(t))).toArray(Stanza[]::new);
+        List<String> expected = times.stream().map(Object::toString).collect(Collectors.toList());
+        assertEquals(expected, reorder(ReorderWindow.ofStanzas(window), stanzas));
+        // a stanza is never as much as the window's time out either, counting a stanza a millisecond
+        Stanza[] timed = shuffled.stream().map(t -> stanza(t * MILLI, Long.toString(t))).toArray(Stanza[]::new);
+        assertEquals(expected, reorder(ReorderWindow.ofMillis(window), timed));
+    }
+
+    @Test
+    void testConverter() {
+        ReorderWindow.Converter converter = new ReorderWindow.Converter();
+        assertEquals("250ms", converter.convert("250ms").toString());
+        assertEquals("100 stanzas", converter.convert("100").toString());
+        assertThrows(TypeConversionException.class, () -> converter.convert("1s"));
+        assertThrows(TypeConversionException.class, () -> converter.convert("-5"));
+    }
+}
@@ -0,0 +1,131 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import test.model.SyntheticLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static test.model.Stanzas.describe;
+
+public class TestRotationSet {
+    static Path dir;
+    /** The files of each log, oldest first */
+    static List<Path> trace, messages;
+
+    @BeforeAll
+    static void writeLogs() throws IOException {
+        dir = Files.createTempDirectory("lol-rotation");
+        trace = new SyntheticLog(1, SyntheticLog.Format.DMY).writeRolling(dir, "trace", 400_000, 60_000);
+        messages = new SyntheticLog(2, SyntheticLog.Format.DMY).withMessagesOnly().writeRolling(dir, "messages", 100_000, 60_000);
+        Files.writeString(dir.resolve("server.xml"), "<server/>");
+    }
+
+    @AfterAll
+    static void deleteLogs() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+    }
+
+    /**
+     * @return the stanzas of each file in turn, leaving out all but the first preamble, under the set's short name
+     */
+    static List<String> concatenated(LogFile set, List<Path> files) {
+        List<String> expected = new ArrayList<>();
+        for (Path file : files) {
+            try (Stream<Stanza> stanzas = new LogFile(file.toString(), LogFile.TimestampFormat.NONE, set).stream()) {
+                stanzas.filter(s -> expected.isEmpty() || !s.isPreamble())
+                        .forEach(s -> expected.add(describe(s)));
+            }
+        }
+        return expected;
+    }
+
+    @Test
+    void testGlobReadsTheFilesInTimeOrder() {
+        assertTrue(trace.size() > 3, "only " + trace.size() + " trace files");
+        LogFile set = new LogFile.Converter().convert(dir.resolve("trace*.log").toString());
+        assertEquals(trace.stream().map(Path::toString).collect(Collectors.toList()),
+                set.members().stream().map(lf -> lf.filename).collect(Collectors.toList()));
+        assertEquals(concatenated(set, trace), describe(set.stream()));
+    }
+
+    @Test
+    void testDirectoryHasASetForEachLog() {
+        List<LogFile> logs = LogFile.expand(List.of(new LogFile(dir.toString())));
+        assertEquals(2, logs.size());
+        // the directory itself is not read, so takes no name
+        assertEquals(List.of("AA", "BB"), logs.stream().map(lf -> lf.shortname).collect(Collectors.toList()));
+        assertEquals(messages.size(), logs.get(0).members().size());
+        assertEquals(trace.size(), logs.get(1).members().size());
+        assertEquals(concatenated(logs.get(1), trace), describe(logs.get(1).stream()));
+    }
+
+    @Test
+    void testOneFileOpenAtOnce() {
+        RotationSet set = RotationSet.ofGlob(dir.resolve("trace*.log").toString(), LogFile.TimestampFormat.NONE);
+        int[] open = new int[2];
+        describe(set.stream(Long.MIN_VALUE, Long.MAX_VALUE, lf -> {
+            open[0]++;
+            open[1] = Math.max(open[1], open[0]);
+            return lf.stream().onClose(() -> open[0]--);
+        }));
+        assertEquals(1, open[1]);
+        assertEquals(0, open[0]);
+    }
+
+    @Test
+    void testWindowSkipsFilesOutsideIt() {
+        RotationSet set = RotationSet.ofGlob(dir.resolve("trace*.log").toString(), LogFile.TimestampFormat.NONE);
+        List<LogFile> members = set.members();
+        // a moment in the middle of the second file
+        List<Long> times;
+        try (Stream<Stanza> stanzas = members.get(1).stream()) {
+            times = stanzas.filter(s -> !s.isPreamble()).map(Stanza::getEpochNanos).collect(Collectors.toList());
+        }
+        long since = times.get(times.size() / 2);
+        List<LogFile> opened = new ArrayList<>();
+        describe(set.stream(since, since, lf -> {
+            opened.add(lf);
+            return lf.stream();
+        }));
+        assertEquals(List.of(members.get(1)), opened);
+
+        TimeWindow window = new TimeWindow();
+        window.since = TimestampParser.toInstant(since);
+        window.until = Instant.MAX;
+        List<String> inWindow = describe(TimeWindow.stream(set, window));
+        List<String> expected = concatenated(set, trace).stream()
+                .filter(s -> Long.parseLong(s.split(" ")[1]) >= since)
+                .collect(Collectors.toList());
+        assertEquals(expected, inWindow);
+    }
+
+    @Test
+    void testMergedThroughSortedRuns() {
+        List<LogFile> logs = LogFile.expand(List.of(new LogFile(dir.toString())));
+        List<LogFile> files = new ArrayList<>(logs);
+        files.add(new LogFile(messages.get(0).toString()));
+        files.add(new LogFile(trace.get(0).toString()));
+        List<String> flat = describe(TestSortedRuns.mergeAtOnce(files));
+        assertEquals(flat, describe(SortedRuns.merge(files, 3, 1024, TestSortedRuns::mergeAtOnce)));
+    }
+
+    @Test
+    void testNoMatches() {
+        assertThrows(IllegalArgumentException.class, () -> new LogFile.Converter().convert(dir.resolve("nothing*.log").toString()));
+    }
+}
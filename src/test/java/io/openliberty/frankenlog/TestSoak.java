@@ -0,0 +1,149 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import picocli.CommandLine;
+import test.model.SyntheticLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs lol over several gigabytes of made-up logs from several servers, in a JVM with a small heap,
+ * to find out whether it keeps up and whether it runs out of memory.
+ * Each server has a trace log and a messages log, both rolled over, with its own time stamp format and its own clock skew.
+ * <p>
+ * These only run with <code>./gradlew soak</code>, which takes the size, the heap and the minimum rate from its properties.
+ */
+@Tag("soak")
+public class TestSoak {
+    static final double GIGABYTES = Double.parseDouble(System.getProperty("soak.gigabytes", "2"));
+    static final String MAX_HEAP = System.getProperty("soak.xmx", "64m");
+    static final long MIN_STANZAS_PER_SECOND = Long.getLong("soak.stanzasPerSecond", 100_000);
+    static final int SERVERS = 4;
+    static final long MAX_FILE_BYTES = 256 << 20;
+    static final Path DIR = Paths.get("build/soak");
+    static final SyntheticLog.Format[] FORMATS = {SyntheticLog.Format.DMY, SyntheticLog.Format.MDY, SyntheticLog.Format.YMD};
+
+    /** The arguments that name the logs, in the order they were written */
+    static final List<String> logs = new ArrayList<>();
+    static long stanzas, lines;
+
+    @BeforeAll
+    static void writeLogs() throws IOException {
+        deleteLogs();
+        long traceBytes = (long) (GIGABYTES * (1L << 30) * 4 / 5 / SERVERS);
+        for (int s = 0; s < SERVERS; s++) {
+            Path dir = Files.createDirectories(DIR.resolve("server" + s));
+            SyntheticLog.Format format = FORMATS[s % FORMATS.length];
+            // each server's clock is out by up to a couple of seconds
+            Instant start = SyntheticLog.START.plusMillis(s * 997 % 4000 - 2000);
+            SyntheticLog trace = new SyntheticLog(s, format, start).withMaxStackDepth(200);
+            SyntheticLog messages = new SyntheticLog(SERVERS + s, format, start).withMessagesOnly();
+            add(trace.writeRolling(dir, "trace", traceBytes, MAX_FILE_BYTES), format);
+            add(messages.writeRolling(dir, "messages", traceBytes / 4, MAX_FILE_BYTES), format);
+            stanzas += trace.getStanzas() + messages.getStanzas();
+            lines += trace.getLines() + messages.getLines();
+        }
+        System.out.printf("Wrote %d stanzas, %d lines, in %d files%n", stanzas, lines, logs.size());
+    }
+
+    /**
+     * A year, month and day can be read as a day, month and year, so those files are named with their format.
+     */
+    private static void add(List<Path> files, SyntheticLog.Format format) {
+        for (Path file : files) logs.add(file + (format == SyntheticLog.Format.YMD ? ":YMD" : ""));
+    }
+
+    @AfterAll
+    static void deleteLogs() throws IOException {
+        if (!Files.exists(DIR)) return;
+        try (Stream<Path> files = Files.walk(DIR)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(file);
+        }
+    }
+
+    /** What a JVM exits with when it runs out of memory with <code>-XX:+ExitOnOutOfMemoryError</code> */
+    static final int OUT_OF_MEMORY = 3;
+
+    /**
+     * Run lol in a JVM of its own, with the small heap, throwing away the output but counting its lines.
+     * The JVM exits as soon as it runs out of memory, rather than carrying on with whatever threads are left.
+     *
+     * @return the number of lines of output
+     */
+    static long lol(String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx" + MAX_HEAP, "-XX:+ExitOnOutOfMemoryError",
+                "-cp", location(Lol.class) + File.pathSeparator + location(CommandLine.class),
+                Lol.class.getName()));
+        command.addAll(List.of(args));
+        command.addAll(logs);
+        Path errors = DIR.resolve("errors.txt");
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectError(errors.toFile()).start();
+        long outputLines = 0;
+        try (InputStream out = process.getInputStream()) {
+            byte[] buffer = new byte[64 << 10];
+            for (int n; (n = out.read(buffer)) > 0; ) for (int i = 0; i < n; i++) if (buffer[i] == '\n') outputLines++;
+        }
+        int exitCode = process.waitFor();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        String stderr = Files.readString(errors);
+        if (exitCode == OUT_OF_MEMORY || stderr.contains("OutOfMemoryError")) fail(String.join(" ", args) + " ran out of memory with -Xmx" + MAX_HEAP + ":\n" + stderr);
+        assertEquals(0, exitCode, stderr);
+        long rate = (long) (stanzas / seconds);
+        System.out.printf("%s: %.1fs, %d stanzas/s, %d lines of output%n", String.join(" ", args), seconds, rate, outputLines);
+        assertTrue(rate >= MIN_STANZAS_PER_SECOND, String.join(" ", args) + " only read " + rate + " stanzas/s");
+        return outputLines;
+    }
+
+    /**
+     * @return the directory or jar a class was loaded from
+     */
+    private static String location(Class<?> c) throws IOException {
+        try {
+            return Paths.get(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--output=plain gather", "--mmap --output=plain gather"})
+    void testGather(String command) throws Exception {
+        long output = lol(command.split(" "));
+        assertTrue(output >= lines, "Only " + output + " lines of output for " + lines + " lines of stanzas");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"grep -B 2 CWWKF0011I", "--mmap grep -B 2 CWWKF0011I"})
+    void testGrep(String command) throws Exception {
+        assertTrue(lol(command.split(" ")) > 0, "Nothing found");
+    }
+
+    @Test
+    void testGap() throws Exception {
+        assertTrue(lol("gap", "--top", "10") > 0);
+        assertTrue(lol("gap", "--histogram") > 0);
+    }
+}
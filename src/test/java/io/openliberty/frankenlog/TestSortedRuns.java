@@ -0,0 +1,69 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static io.openliberty.frankenlog.TestCompressedInput.LOGS;
+import static io.openliberty.frankenlog.TestCompressedInput.resource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static test.model.Stanzas.describe;
+
+public class TestSortedRuns {
+    /** Each of the test logs several times over, as different files with the same stanzas, so there are plenty of ties */
+    static List<LogFile> logFiles(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new LogFile(resource(LOGS[i % LOGS.length]).toString()))
+                .collect(Collectors.toList());
+    }
+
+    static Stream<Stanza> mergeAtOnce(List<LogFile> files) {
+        List<Stream<Stanza>> inputs = files.stream().map(LogFile::stream).collect(Collectors.toList());
+        return MergeUtil.merge(inputs.stream(), Stanza::getEpochNanos).onClose(() -> inputs.forEach(Stream::close));
+    }
+
+    static long runFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(p -> p.getFileName().toString().startsWith("lol-run")).count();
+        }
+    }
+
+    @ParameterizedTest(name = "merge {0} files, 3 at a time")
+    @ValueSource(ints = {1, 3, 4, 7, 10, 20})
+    void testSameOrderAsMergingAtOnce(int count) throws IOException {
+        List<LogFile> files = logFiles(count);
+        List<String> expected = describe(mergeAtOnce(files));
+        long runsBefore = runFiles();
+        List<String> actual = describe(SortedRuns.merge(files, 3, 1024, TestSortedRuns::mergeAtOnce));
+        assertEquals(expected, actual);
+        assertEquals(runsBefore, runFiles());
+    }
+
+    @Test
+    void testNeverTooManyOpen() {
+        int[] open = new int[2];
+        List<LogFile> files = logFiles(30);
+        describe(SortedRuns.merge(files, 5, 1024, group -> {
+            // the stream for each group is closed before the next is opened
+            open[0] += group.size();
+            open[1] = Math.max(open[1], open[0]);
+            return mergeAtOnce(group).onClose(() -> open[0] -= group.size());
+        }));
+        assertEquals(4, open[1]);
+    }
+
+    @Test
+    void testTooFewOpenFiles() {
+        assertThrows(IllegalArgumentException.class, () -> SortedRuns.merge(logFiles(3), 2, 1024, TestSortedRuns::mergeAtOnce));
+    }
+}
@@ -15,23 +15,41 @@ package io.openliberty.frankenlog;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import test.model.ExpectedLog;
 import test.model.ExpectedStanza;
 import test.util.Streams;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static io.openliberty.frankenlog.LogFile.TimestampFormat.*;
 import static io.openliberty.frankenlog.LogReader.getTimeStamp;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestStanza {
+    /** The log that made-up stanzas come from, which takes no name from the logs a test reads */
+    static final LogFile MADE_UP = new LogFile("made-up.log", NONE, 0);
+
+    /**
+     * @return a one-line stanza, as if read from a log with this time stamp
+     */
+    static Stanza stanza(long time, String text) {
+        return new Stanza(MADE_UP, List.of(text), time, "[" + time + "]");
+    }
+
     @ParameterizedTest(name = "parse time for {0}")
     @EnumSource(ExpectedStanza.class)
     public void testParseTime(ExpectedStanza expectedStanza) {
@@ -42,8 +60,8 @@ public class TestStanza {
     @ParameterizedTest(name = "test Stanzas for {0}")
     @EnumSource(ExpectedLog.class)
     public void testStanzaNext(ExpectedLog expectedLog) throws Exception {
-            try (Stanza firstStanza = new LogReader(new LogFile(expectedLog.getFilename())).next()) {
-            expectedLog.verify(Streams.from(firstStanza, Stanza::next));
+        try (LogReader reader = new LogReader(new LogFile(expectedLog.getFilename()))) {
+            expectedLog.verify(Streams.from(reader.next(), stanza -> reader.next()));
         }
     }
 
@@ -65,6 +83,57 @@ public class TestStanza {
         }
     }
 
+    public static class TestMappedReader {
+        @ParameterizedTest(name = "test MappedLogReader with {0}")
+        @EnumSource(ExpectedLog.class)
+        void testReadLogFile(ExpectedLog expectedLog) {
+            try (LogReader reader = new MappedLogReader(new LogFile(expectedLog.getFilename()))) {
+                expectedLog.verify(Streams.from(reader::next));
+            }
+        }
+
+        @ParameterizedTest(name = "test compact stanzas outlive the MappedLogReader with {0}")
+        @EnumSource(ExpectedLog.class)
+        void testCompactStanzasOutliveReader(ExpectedLog expectedLog) {
+            List<Stanza> stanzas = new ArrayList<>();
+            try (LogReader reader = new MappedLogReader(new LogFile(expectedLog.getFilename()), 16)) {
+                Streams.from(reader::next).forEach(stanzas::add);
+            }
+            stanzas.forEach(stanza -> assertTrue(stanza instanceof CompactStanza, "stanzas should be compact"));
+            expectedLog.verify(stanzas.stream());
+        }
+
+        @ParameterizedTest(name = "test MappedLogReader with tiny windows with {0}")
+        @EnumSource(ExpectedLog.class)
+        void testReadLogFileWithTinyWindows(ExpectedLog expectedLog) {
+            try (LogReader reader = new MappedLogReader(new LogFile(expectedLog.getFilename()), 16)) {
+                expectedLog.verify(Streams.from(reader::next));
+            }
+        }
+    }
+
+    public static class TestRangeSpliterator {
+        @ParameterizedTest(name = "test LogRangeSpliterator with tiny ranges with {0}")
+        @EnumSource(ExpectedLog.class)
+        void testReadLogFileInRanges(ExpectedLog expectedLog) {
+            LogRangeSpliterator stanzas = new LogRangeSpliterator(new LogFile(expectedLog.getFilename()), 0, -1, 16, 2);
+            expectedLog.verify(StreamSupport.stream(stanzas, false));
+        }
+
+        @ParameterizedTest(name = "test parallel ranges match sequential reading of {0}")
+        @ValueSource(strings = {"server1.log", "server2.log", "client.log"})
+        void testParallelRangesMatchSequentialReading(String resource) throws Exception {
+            LogFile logFile = new LogFile(Paths.get(TestStanza.class.getResource("/" + resource).toURI()).toString());
+            List<String> expected;
+            try (Stream<Stanza> stanzas = new LogReader(logFile).getStanzas()) {
+                expected = stanzas.map(Stanza::toString).collect(toList());
+            }
+            LogRangeSpliterator ranges = new LogRangeSpliterator(logFile, 0, -1, 1024, 3);
+            List<String> actual = StreamSupport.stream(ranges, true).map(Stanza::toString).collect(toList());
+            assertEquals(expected, actual);
+        }
+    }
+
     @Test
     void testStanzaReader() {
         String[] lines = {
@@ -0,0 +1,78 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static io.openliberty.frankenlog.TestCompressedInput.resource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestStats {
+    static final Path LOG = resource("server1.log");
+
+    @BeforeEach
+    void enable() {
+        Stats.reset();
+        Stats.enable();
+    }
+
+    @AfterEach
+    void disable() {
+        Stats.reset();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"stream", "mapped"})
+    void testEachReaderCountsTheSame(String reader) throws Exception {
+        LogFile lf = new LogFile(LOG.toString());
+        try (LogReader in = reader.equals("mapped") ? new MappedLogReader(lf) : new LogReader(lf)) {
+            while (in.next() != null) ;
+        }
+        Stats.FileCounts counts = Stats.of(lf);
+        assertEquals(Files.size(LOG), counts.bytes.sum());
+        assertEquals(1303, counts.lines.sum());
+        assertEquals(693, counts.stanzas.sum());
+        assertEquals(611, counts.continuationLines.sum());
+        assertEquals(0, counts.parseFailures.sum());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Stats.print(new PrintStream(bytes, true));
+        String report = bytes.toString();
+        assertTrue(report.contains("1,303 lines, 693 stanzas, 611 continuation lines, 0 parse failures"), report);
+        assertTrue(report.contains("Peak heap"), report);
+    }
+
+    @Test
+    void testParseFailures() {
+        LogFile lf = new LogFile("-");
+        LogReader reader = new LogReader(lf, null);
+        reader.add("[01/03/19 15:57:32:780 GMT] 00000001 Payload I first");
+        reader.add("[01/03/2019 15:57:32:780 GMT] 00000001 Payload I the year is too long");
+        reader.add("[not a time stamp");
+        reader.add("\tat a continuation line");
+        reader.flush();
+        reader.addStats(0);
+        Stats.FileCounts counts = Stats.of(lf);
+        assertEquals(4, counts.lines.sum());
+        assertEquals(1, counts.stanzas.sum());
+        assertEquals(3, counts.continuationLines.sum());
+        assertEquals(1, counts.parseFailures.sum());
+    }
+
+    @Test
+    void testOneOperationInEverySampleIsTimed() {
+        assertEquals(0, Stats.start(1));
+        assertNotEquals(0, Stats.start(Stats.SAMPLE));
+        Stats.reset();
+        assertEquals(0, Stats.start(Stats.SAMPLE));
+    }
+}
@@ -0,0 +1,87 @@
+package io.openliberty.frankenlog;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTimeIndex {
+    @TempDir
+    static Path dir;
+    static File log;
+
+    @BeforeAll
+    static void createLog() throws IOException {
+        log = dir.resolve("INDEXED_LOG.log").toFile();
+        // a few megabytes of trace, slightly out of order, so there are several index entries
+        writeStanzas(0, 20_000, false);
+    }
+
+    private static void writeStanzas(int from, int to, boolean append) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(log, append))) {
+            if (!append) out.println("product = Acme Widget Wrangler");
+            for (int i = from; i < to; i++) {
+                int millis = i * 10 + (i % 7 == 0 ? 15 : 0);
+                out.printf("[01/03/19 %d:%02d:%02d:%03d GMT] 00000001 id=00000000 Component I MSG%05dI: blah blah blah blah blah blah blah blah%n",
+                        millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000, i);
+                if (i % 10 == 0) out.println("\tat com.acme.Widget.wrangle(Widget.java:42)");
+            }
+        }
+    }
+
+    private static List<String> window(Instant since, long offset) {
+        LogFile lf = new LogFile(log.getPath());
+        long sinceNanos = TimestampParser.toEpochNanos(since);
+        try (Stream<Stanza> stanzas = lf.stream(offset)) {
+            return stanzas.filter(s -> !s.isPreamble() && s.getEpochNanos() >= sinceNanos).map(Stanza::toString).collect(toList());
+        }
+    }
+
+    @Test
+    void testSeekingNeverSkipsStanzasInTheWindow() {
+        LogFile lf = new LogFile(log.getPath());
+        TimeIndex index = TimeIndex.forFile(lf);
+        assertTrue(index.size() > 1, "there should be more than one entry");
+        for (int seconds = 0; seconds < 200; seconds += 13) {
+            Instant since = Instant.parse("2019-03-01T00:00:00Z").plusSeconds(seconds);
+            long offset = index.offsetBefore(TimestampParser.toEpochNanos(since));
+            assertEquals(window(since, 0), window(since, offset), "seeking for " + since);
+        }
+    }
+
+    @Test
+    void testGrowingLogExtendsIndex() throws IOException {
+        int before = TimeIndex.forFile(new LogFile(log.getPath())).size();
+        writeStanzas(20_000, 40_000, true);
+        TimeIndex index = TimeIndex.forFile(new LogFile(log.getPath()));
+        assertTrue(index.size() > before, "the index should have grown");
+        Instant since = Instant.parse("2019-03-01T00:05:00Z");
+        assertEquals(window(since, 0), window(since, index.offsetBefore(TimestampParser.toEpochNanos(since))));
+    }
+
+    @Test
+    void testBisectionNeverSkipsStanzasInTheWindow() {
+        LogFile lf = new LogFile(log.getPath());
+        for (int seconds = 0; seconds < 200; seconds += 13) {
+            Instant since = Instant.parse("2019-03-01T00:00:00Z").plusSeconds(seconds);
+            long offset;
+            try (MappedLogReader reader = new MappedLogReader(lf, 4096)) {
+                offset = reader.bisect(TimestampParser.toEpochNanos(since) - TimeWindow.BISECT_TOLERANCE_NANOS);
+            }
+            assertTrue(seconds < 2 || offset > 0, "bisection should skip the start of the file for " + since);
+            assertEquals(window(since, 0), window(since, offset), "bisecting for " + since);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.openliberty.frankenlog;
+
+import io.openliberty.frankenlog.LogFile.TimestampFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static io.openliberty.frankenlog.TimestampParser.NO_TIMESTAMP;
+import static io.openliberty.frankenlog.TimestampParser.toEpochNanos;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestTimestampParser {
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest(name = "parse {0}")
+    @ValueSource(strings = {
+            "[17/10/22 15:57:32:780 GMT]",
+            "[10/17/22, 8:32:32:945 PDT]",
+            "[03/01/19 09:57:33:550 EST]",
+            "[22/10/17 08:32:32:945 CST]",
+            "[27/03/22 1:30:00:000 BST]",
+            "[30/02/22 10:00:00:000 GMT]",
+            "[17/10/22 24:00:00:000 GMT]",
+            "[17/10/22 15:57:32:780 GMT+01:00]",
+            "[2019-03-01T15:57:32.780+0000]",
+            "[2022-10-17T08:32:32.945-0700]",
+            "[2024-02-29T23:59:59.999+0530]",
+            "[2022-02-30T08:32:32.945-0700]",
+            "[2022-10-17T08:32:32.945Z]",
+    })
+    void testAgreesWithFormatter(String timeStamp) {
+        Stream.of(TimestampFormat.values()).forEach(format -> {
+            long expected;
+            try {
+                expected = toEpochNanos(format.parse(timeStamp));
+            } catch (RuntimeException e) {
+                expected = NO_TIMESTAMP;
+            }
+            assertEquals(expected, new TimestampParser(format).parse(timeStamp), format + " should agree with the formatter");
+        });
+    }
+
+    @ParameterizedTest(name = "reject {0}")
+    @ValueSource(strings = {
+            "",
+            "[",
+            "[22: hello, world]",
+            "********************************************************************************",
+            "[err] 00000001 SystemErr",
+            "[17/10/22 15:57:32:780 XYZ]",
+            "[17/10/22 15:57:32 GMT]",
+    })
+    void testRejectsWithoutThrowing(String text) {
+        Stream.of(TimestampFormat.values()).forEach(format ->
+                assertEquals(NO_TIMESTAMP, new TimestampParser(format).parse(text), format + " should reject the text"));
+    }
+
+    @Test
+    void testCachedDateAndZoneAreNotReusedWrongly() {
+        TimestampParser parser = new TimestampParser(TimestampFormat.DMY);
+        Stream.of("[17/10/22 15:57:32:780 GMT]", "[17/10/22 15:57:32:780 BST]", "[18/10/22 15:57:32:780 BST]", "[18/10/22 15:57:32:780 GMT]")
+                .forEach(ts -> assertEquals(toEpochNanos(TimestampFormat.DMY.parse(ts)), parser.parse(ts), ts));
+    }
+
+    @Test
+    void testDetectsTheOneFormatThatFits() {
+        assertEquals(TimestampFormat.DMY, TimestampFormat.detect(List.of("[01/03/19 10:00:00:000 PDT]", "[17/10/22 15:57:32:780 PDT]")));
+        assertEquals(TimestampFormat.MDY, TimestampFormat.detect(List.of("[01/03/19 10:00:00:000 GMT]", "[10/17/22 15:57:32:780 GMT]")));
+        assertEquals(TimestampFormat.ISO, TimestampFormat.detect(List.of("[err]", "[2019-03-01T15:57:32.780+0000]")));
+    }
+
+    @Test
+    void testZonesDecideWhenSeveralFormatsFit() {
+        assertEquals(TimestampFormat.DMY, TimestampFormat.detect(List.of("[01/03/19 10:00:00:000 GMT]", "[02/03/19 10:00:00:000 BST]")));
+        assertEquals(TimestampFormat.MDY, TimestampFormat.detect(List.of("[03/01/19 07:57:32:780 PST]", "[03/01/19 09:57:33:550 EST]")));
+        // the zones disagree, so each time stamp is guessed at as it is read
+        assertEquals(TimestampFormat.NONE, TimestampFormat.detect(List.of("[03/01/19 07:57:32:780 PST]", "[01/03/19 15:57:32:780 GMT]")));
+        assertEquals(TimestampFormat.NONE, TimestampFormat.detect(List.of("[err]")));
+        assertEquals(TimestampFormat.NONE, TimestampFormat.detect(List.of()));
+    }
+
+    @Test
+    void testSamplesComeFromAcrossTheFile() throws IOException {
+        File log = dir.resolve("SAMPLED.log").toFile();
+        try (PrintWriter out = new PrintWriter(log)) {
+            // only the end of the file shows that the month comes first
+            for (int i = 0; i < 10_000; i++) out.printf("[01/03/19 10:00:%02d:000 GMT] 00000001 Component I message %d%n", i % 60, i);
+            out.println("[03/13/19 10:00:00:000 GMT] 00000001 Component I the end");
+        }
+        LogFile lf = new LogFile(log.getPath());
+        List<String> samples = lf.sampleTimeStamps();
+        assertEquals("[03/13/19 10:00:00:000 GMT]", samples.get(samples.size() - 1));
+        assertEquals(TimestampFormat.MDY, lf.getFormat());
+    }
+}
@@ -0,0 +1,24 @@
+package test.model;
+
+import io.openliberty.frankenlog.Stanza;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public enum Stanzas {
+    ;
+
+    /**
+     * @return each stanza as a line giving everything about it, so two lots of stanzas can be compared, after which the stream is closed
+     */
+    public static List<String> describe(Stream<Stanza> stanzas) {
+        try (stanzas) {
+            return stanzas.map(Stanzas::describe).collect(Collectors.toList());
+        }
+    }
+
+    public static String describe(Stanza s) {
+        return s.getShortname() + " " + s.getEpochNanos() + " " + s.getLines() + " " + s.getUnformattedTime() + " " + s.getText();
+    }
+}
@@ -0,0 +1,267 @@
+package test.model;
+
+import java.io.BufferedWriter;
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Makes up a Liberty log: a preamble, then stanzas from a handful of threads and components, some with stack traces.
+ * A trace log has every level, and a messages log only has the messages.
+ * The same seed always makes the same log, so measurements made with it can be repeated anywhere.
+ */
+public class SyntheticLog {
+    /** The ways Liberty writes time stamps, each in a zone that leads the guesser to the right format */
+    public enum Format {
+        DMY("'['dd/MM/yy H:mm:ss:SSS zzz']'", "GMT"),
+        MDY("'['MM/dd/yy H:mm:ss:SSS zzz']'", "America/New_York"),
+        YMD("'['yy/MM/dd H:mm:ss:SSS zzz']'", "GMT"),
+        ISO("'['yyyy-MM-dd'T'HH:mm:ss.SSSZ']'", "GMT");
+
+        final DateTimeFormatter formatter;
+
+        Format(String pattern, String zone) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern, Locale.US).withZone(ZoneId.of(zone));
+        }
+    }
+
+    public static final Instant START = Instant.parse("2019-03-01T15:57:32.780Z");
+    public static final String[] MESSAGE_IDS = {"CWWKE0001I", "CWWKF0007I", "CWWKF0008I", "CWWKF0011I", "CWWKF0012I", "CWWKG0017I",
+            "CWWKG0028A", "CWWKO0219I", "CWWKT0016I", "CWWKZ0001I", "CWWKZ0018I", "SRVE0169I", "SRVE0250I", "TRAS0018I", "SESN8501I"};
+    private static final String[] COMPONENTS = {"com.ibm.ws.kernel.launch.internal.FrameworkManager", "com.ibm.ws.kernel.feature.internal.FeatureManager",
+            "com.ibm.ws.config.xml.internal.XMLConfigParser", "com.ibm.ws.tcpchannel.internal.TCPChannel", "com.ibm.ws.app.manager.AppMessageHelper",
+            "com.ibm.ws.webcontainer.osgi.webapp.WebGroup", "com.ibm.ws.http.internal.VirtualHostImpl", "com.ibm.ws.logging.internal.TraceSpecification",
+            "com.ibm.ws.sib.comms.client.ClientSideConnection", "com.ibm.ws.ssl.config.KeyStoreManager"};
+    private static final String[] WORDS = {"server", "feature", "update", "started", "completed", "configuration", "resource", "application",
+            "listening", "requests", "host", "port", "connection", "session", "bound", "module", "seconds", "default_host", "endpoint", "queue"};
+    /** Each level, with how many of every hundred stanzas in a trace log have it, the messages first */
+    private static final String[] LEVELS = {"I", "A", "W", "E", ">", "<", "3"};
+    private static final int[] LEVEL_WEIGHTS = {40, 10, 3, 2, 15, 15, 15};
+    private static final int MESSAGE_LEVELS = 4;
+    private static final int THREADS = 32;
+    private static final DateTimeFormatter ROLLED = DateTimeFormatter.ofPattern("yy.MM.dd_HH.mm.ss", Locale.US);
+
+    private final Random random;
+    private final Format format;
+    private final StringBuilder text = new StringBuilder();
+    private long millis;
+    private boolean trace = true;
+    /** How many of every thousand stanzas end with a stack trace */
+    private int stackTracesPerMille = 20;
+    /** The most frames in each exception of a stack trace */
+    private int maxStackDepth = 45;
+    private long stanzas;
+    private long lines;
+
+    public SyntheticLog(long seed, Format format) {
+        this(seed, format, START);
+    }
+
+    public SyntheticLog(long seed, Format format, Instant start) {
+        this.random = new Random(seed);
+        this.format = format;
+        this.millis = start.toEpochMilli();
+    }
+
+    public SyntheticLog withStackTracesPerMille(int perMille) {
+        this.stackTracesPerMille = perMille;
+        return this;
+    }
+
+    public SyntheticLog withMaxStackDepth(int frames) {
+        this.maxStackDepth = frames;
+        return this;
+    }
+
+    /**
+     * Leave out the trace levels, as a messages log does.
+     */
+    public SyntheticLog withMessagesOnly() {
+        this.trace = false;
+        return this;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return how many stanzas have been made
+     */
+    public long getStanzas() {
+        return stanzas;
+    }
+
+    /**
+     * @return how many lines the stanzas made so far have between them
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the time of the latest stanza, or of the start if there has been none
+     */
+    public Instant getTime() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    /**
+     * Move the time on by a few milliseconds, occasionally by a few seconds.
+     *
+     * @return the time stamp for the new time
+     */
+    public String nextTimeStamp() {
+        millis += random.nextInt(100) == 0 ? 1000 + random.nextInt(10_000) : random.nextInt(10);
+        return format.formatter.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * @return the next stanza, with its lines separated by newlines and no newline at the end
+     */
+    public String nextStanza() {
+        text.setLength(0);
+        text.append(nextTimeStamp()).append(' ');
+        String thread = Integer.toHexString(1 + random.nextInt(THREADS));
+        for (int i = thread.length(); i < 8; i++) text.append('0');
+        text.append(thread).append(" id=00000000 ");
+        String component = COMPONENTS[random.nextInt(COMPONENTS.length)];
+        text.append(component);
+        for (int i = component.length(); i < 60; i++) text.append(' ');
+        String level = level();
+        text.append(' ').append(level).append(' ');
+        switch (level) {
+            case ">":
+                text.append(word()).append(" Entry");
+                break;
+            case "<":
+                text.append(word()).append(" Exit");
+                break;
+            case "3":
+                text.append(word()).append(' ').append(word()).append(" = ").append(random.nextInt(100_000));
+                break;
+            default:
+                text.append(MESSAGE_IDS[random.nextInt(MESSAGE_IDS.length)]).append(": The");
+                for (int i = 3 + random.nextInt(12); i > 0; i--) text.append(' ').append(word());
+                text.append('.');
+        }
+        lines++;
+        if (random.nextInt(1000) < stackTracesPerMille) appendStackTrace();
+        stanzas++;
+        return text.toString();
+    }
+
+    /**
+     * Add an exception, with a cause now and then, each a few frames deep up to the maximum depth.
+     */
+    private void appendStackTrace() {
+        String heading = "\njava.lang.IllegalStateException: ";
+        do {
+            text.append(heading).append(word()).append(' ').append(word());
+            lines++;
+            for (int i = Math.min(5, maxStackDepth) + random.nextInt(Math.max(1, maxStackDepth - 4)); i > 0; i--) {
+                String component = COMPONENTS[random.nextInt(COMPONENTS.length)];
+                text.append("\n\tat ").append(component).append('.').append(word())
+                        .append('(').append(component, component.lastIndexOf('.') + 1, component.length()).append(".java:")
+                        .append(1 + random.nextInt(2000)).append(')');
+                lines++;
+            }
+            heading = "\nCaused by: java.io.IOException: ";
+        } while (random.nextInt(4) == 0);
+    }
+
+    private String level() {
+        int levels = trace ? LEVELS.length : MESSAGE_LEVELS;
+        int total = 0;
+        for (int i = 0; i < levels; i++) total += LEVEL_WEIGHTS[i];
+        int n = random.nextInt(total);
+        for (int i = 0; i < levels; i++) if ((n -= LEVEL_WEIGHTS[i]) < 0) return LEVELS[i];
+        return LEVELS[0];
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    public void writePreamble(BufferedWriter out) throws IOException {
+        out.write("********************************************************************************\n");
+        out.write("product = WebSphere Application Server 19.0.0.3 (wlp-1.0.26.cl190320190302-0300)\n");
+        out.write("trace.specification = *=info:logservice=detail\n");
+        out.write("********************************************************************************\n");
+    }
+
+    /**
+     * Write a preamble and then the specified number of stanzas.
+     */
+    public void write(Path file, int stanzas) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, UTF_8)) {
+            writePreamble(out);
+            for (int i = 0; i < stanzas; i++) {
+                out.write(nextStanza());
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * Write about the specified number of bytes to <code>name.log</code> in a directory, rolling it over as Liberty does
+     * whenever it reaches the maximum size: the full file is renamed after the time it was rolled over,
+     * e.g. <code>messages_19.03.01_15.57.32.0.log</code>, and a new one is started with its own preamble.
+     *
+     * @return the files written, oldest first, so the last is <code>name.log</code>
+     */
+    public List<Path> writeRolling(Path dir, String name, long bytes, long maxFileBytes) {
+        List<Path> files = new ArrayList<>();
+        Path current = dir.resolve(name + ".log");
+        try {
+            for (long written = 0; written < bytes; ) {
+                long fileBytes = 0;
+                try (BufferedWriter out = Files.newBufferedWriter(current, UTF_8)) {
+                    writePreamble(out);
+                    while (fileBytes < maxFileBytes && written + fileBytes < bytes) {
+                        String stanza = nextStanza();
+                        out.write(stanza);
+                        out.write('\n');
+                        fileBytes += stanza.length() + 1;
+                    }
+                }
+                written += fileBytes;
+                if (written >= bytes) break;
+                String rolledName = name + "_" + ROLLED.withZone(format.formatter.getZone()).format(getTime());
+                Path rolled = dir.resolve(rolledName + ".0.log");
+                for (int i = 1; Files.exists(rolled); i++) rolled = dir.resolve(rolledName + "." + i + ".log");
+                files.add(Files.move(current, rolled));
+            }
+            files.add(current);
+            return files;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    /**
+     * Write a log to a temporary file that is deleted when the JVM exits.
+     */
+    public Path writeTempFile(int stanzas) {
+        try {
+            Path file = Files.createTempFile("synthetic-" + format.name().toLowerCase(Locale.ROOT), ".log");
+            file.toFile().deleteOnExit();
+            write(file, stanzas);
+            return file;
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+}